@@ -0,0 +1,53 @@
+package game2048;
+
+import java.lang.management.ManagementFactory;
+
+/** Checks that, after warming up, complete games played through
+ *  Main.play with no display, input, or log allocate no memory, as
+ *  measured by the HotSpot per-thread allocation counter.  Exits with
+ *  status 1 if they do.
+ *  @author Rafayel Mkrtchyan
+ */
+public class AllocationCheck {
+
+    /** Number of games played before measuring. */
+    static final int WARMUP_GAMES = 5000;
+
+    /** Number of games measured. */
+    static final int GAMES = 1000;
+
+    /** Run the check for each engine.  ARGS is unused. */
+    public static void main(String... args) {
+        boolean ok = true;
+        for (String engine : new String[] { "array", "bitboard", "lanes" }) {
+            for (String spawn : new String[] { "rejection", "indexed" }) {
+                ok &= check(engine, spawn);
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /** Check games using ENGINE and SPAWN (as for --engine and --spawn).
+     *  Return true iff they allocate nothing. */
+    static boolean check(String engine, String spawn) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        Main main = Boards.newMain(engine, "--ai=random", "--spawn=" + spawn);
+
+        for (int k = 0; k < WARMUP_GAMES; k += 1) {
+            main.play();
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int k = 0; k < GAMES; k += 1) {
+            main.play();
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+
+        System.out.printf("%s/%s: %d bytes allocated in %d games%n",
+                          engine, spawn, allocated, GAMES);
+        return allocated == 0;
+    }
+
+}
@@ -0,0 +1,66 @@
+package game2048;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks for BatchEngine.  Each operation advances every game of the
+ *  batch by one random move and restarts the games that have ended, so
+ *  the number of game steps per second is games divided by the time per
+ *  operation.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchBenchmark {
+
+    /** Number of moves for each game held ready. */
+    static final int MOVE_SETS = 16;
+
+    /** Number of games in the batch. */
+    @Param({ "1024", "65536" })
+    public int games;
+
+    /** Create the batch and the moves. */
+    @Setup
+    public void setup() {
+        _engine = new BatchEngine(games, 2048, false);
+        _rewards = new int[games];
+        _moves = new int[MOVE_SETS][games];
+        Random random = new Random(2048);
+        for (int[] moves : _moves) {
+            for (int k = 0; k < games; k += 1) {
+                moves[k] = random.nextInt(4);
+            }
+        }
+    }
+
+    /** Advance all games one step. */
+    @Benchmark
+    public int step() {
+        _next = (_next + 1) % MOVE_SETS;
+        int ended = _engine.step(_moves[_next], _rewards);
+        if (ended > 0) {
+            _engine.restartOver();
+        }
+        return ended;
+    }
+
+    /** The batch. */
+    private BatchEngine _engine;
+    /** Sets of moves for all games, used in turn. */
+    private int[][] _moves;
+    /** Index of the set of moves last used. */
+    private int _next;
+    /** Rewards from the last step. */
+    private int[] _rewards;
+}
@@ -0,0 +1,77 @@
+package game2048;
+
+import ucb.util.CommandArgs;
+
+/** Sample boards and factories shared by the benchmarks.
+ *  @author Rafayel Mkrtchyan
+ */
+class Boards {
+
+    /** A board with a typical mid-game mix of tiles and gaps. */
+    static final int[][] MIDGAME = {
+        { 2, 0, 4, 2 },
+        { 8, 8, 0, 4 },
+        { 16, 4, 4, 0 },
+        { 64, 32, 16, 2 },
+    };
+
+    /** A board with only two tiles. */
+    static final int[][] SPARSE = {
+        { 0, 0, 0, 0 },
+        { 0, 2, 0, 0 },
+        { 0, 0, 0, 0 },
+        { 0, 0, 4, 0 },
+    };
+
+    /** A full board on which no move is possible. */
+    static final int[][] FULL_LOST = {
+        { 2, 4, 2, 4 },
+        { 4, 2, 4, 2 },
+        { 2, 4, 2, 4 },
+        { 4, 2, 4, 8 },
+    };
+
+    /** A full board whose only possible merge is in the last square
+     *  scanned. */
+    static final int[][] FULL_LIVE = {
+        { 2, 4, 2, 4 },
+        { 4, 2, 4, 2 },
+        { 2, 4, 2, 4 },
+        { 4, 2, 4, 4 },
+    };
+
+    /** A board with a single empty square. */
+    static final int[][] NEAR_FULL = {
+        { 2, 4, 2, 4 },
+        { 4, 2, 4, 2 },
+        { 2, 4, 0, 4 },
+        { 4, 2, 4, 8 },
+    };
+
+    /** Return a SIZE x SIZE board with a mid-game mix of tiles and gaps:
+     *  about two thirds of its squares hold tiles from 2 to 64, arranged
+     *  so that every row and column has moves and merges. */
+    static int[][] midgame(int size) {
+        int[][] board = new int[size][size];
+        for (int r = 0; r < size; r += 1) {
+            for (int c = 0; c < size; c += 1) {
+                int k = (3 * r + 5 * c) % 9;
+                board[r][c] = k < 3 ? 0 : 1 << (k - 2);
+            }
+        }
+        return board;
+    }
+
+    /** Return a Main with no display or input, using ENGINE ("array",
+     *  "bitboard", or "lanes") and the additional command-line arguments
+     *  ARGS. */
+    static Main newMain(String engine, String... args) {
+        String[] all = new String[args.length + 3];
+        all[0] = "--no-display";
+        all[1] = "--seed=2048";
+        all[2] = "--engine=" + engine;
+        System.arraycopy(args, 0, all, 3, args.length);
+        return new Main(new CommandArgs(Main.OPTIONS, all));
+    }
+
+}
@@ -0,0 +1,58 @@
+package game2048;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks for Main.gameOver on sparse and full boards.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameOverBenchmark {
+
+    /** Board to test: "sparse", "fullLost" (no moves) or "fullLive" (one
+     *  merge, found last). */
+    @Param({ "sparse", "fullLost", "fullLive" })
+    public String board;
+
+    /** Board engine selected by --engine. */
+    @Param({ "array", "bitboard" })
+    public String engine;
+
+    /** Create the game and set up the board. */
+    @Setup
+    public void setup() {
+        _main = Boards.newMain(engine);
+        switch (board) {
+        case "sparse":
+            _main.setBoard(Boards.SPARSE);
+            break;
+        case "fullLost":
+            _main.setBoard(Boards.FULL_LOST);
+            break;
+        case "fullLive":
+            _main.setBoard(Boards.FULL_LIVE);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown board: " + board);
+        }
+    }
+
+    /** Test for the end of the game. */
+    @Benchmark
+    public boolean gameOver() {
+        return _main.gameOver();
+    }
+
+    /** The game being tested. */
+    private Main _main;
+}
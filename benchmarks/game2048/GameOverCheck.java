@@ -0,0 +1,128 @@
+package game2048;
+
+import java.util.Random;
+
+import game2048.Main.Side;
+
+/** A differential test of Main.gameOver, which relies on information
+ *  maintained as squares change, against Main.gameOverScan, which examines
+ *  the whole board.  Compares the two on random boards installed with
+ *  Main.setBoard and on the boards that arise in random games, and also
+ *  compares Simulator.gameOver on the packed forms of the random boards.
+ *  Also checks an endless game whose only equal neighbors are tiles that
+ *  the engine does not merge.  Exits with status 1 if they ever disagree.
+ *  @author Rafayel Mkrtchyan
+ */
+public class GameOverCheck {
+
+    /** Number of random boards to check. */
+    static final int BOARDS = 2000000;
+
+    /** Number of random games to check. */
+    static final int GAMES = 20000;
+
+    /** Run the check for each engine.  ARGS is unused. */
+    public static void main(String... args) {
+        boolean ok = true;
+        for (String engine : new String[] { "array", "bitboard", "lanes" }) {
+            ok &= check(engine);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /** Check boards using ENGINE (as for --engine).  Return true iff
+     *  gameOver and gameOverScan always agree. */
+    static boolean check(String engine) {
+        Main main = Boards.newMain(engine);
+        Random random = new Random(2048);
+        int[][] board = new int[Main.SIZE][Main.SIZE];
+        long checked, over, failures;
+        checked = over = failures = 0;
+
+        for (int k = 0; k < BOARDS; k += 1) {
+            randomBoard(board, random);
+            main.setBoard(board);
+            failures += compare(main);
+            failures += Simulator.gameOver(Bitboard.pack(board))
+                == main.gameOverScan() ? 0 : 1;
+            over += main.gameOver() ? 1 : 0;
+            checked += 1;
+        }
+
+        failures += unmergeable(engine);
+        checked += 1;
+
+        Side[] sides = Side.values();
+        for (int k = 0; k < GAMES; k += 1) {
+            main.clear();
+            main.setRandomPiece();
+            while (!main.gameOverScan()) {
+                main.setRandomPiece();
+                failures += compare(main);
+                main.tiltBoard(sides[random.nextInt(sides.length)]);
+                failures += compare(main);
+                checked += 2;
+            }
+            over += 1;
+        }
+
+        System.out.printf("%s: %d boards, %d of them finished, "
+                          + "%d disagreements%n",
+                          engine, checked, over, failures);
+        return failures == 0;
+    }
+
+    /** Check an endless game with ENGINE on a full board whose only equal
+     *  neighbors are two tiles of the largest exponent that ENGINE
+     *  represents (that of Bitboard for the array engine).  The game is
+     *  over iff ENGINE refuses to merge them, which must also be iff no
+     *  tilt changes the board.  Return the number of failures. */
+    static int unmergeable(String engine) {
+        Main main = Boards.newMain(engine, "--endless");
+        int limit = "lanes".equals(engine) ? LaneBoard.MAX_EXPONENT
+            : Bitboard.MAX_EXPONENT;
+        boolean merges = "array".equals(engine);
+        int[][] board = new int[Main.SIZE][Main.SIZE];
+        for (int r = 0; r < Main.SIZE; r += 1) {
+            for (int c = 0; c < Main.SIZE; c += 1) {
+                board[r][c] = 1 << (r * Main.SIZE + c);
+            }
+        }
+        board[0][0] = board[0][1] = 1 << limit;
+        main.setBoard(board);
+        int failures;
+        failures = compare(main);
+        failures += main.gameOver() != merges ? 0 : 1;
+        if ("bitboard".equals(engine)) {
+            failures += Simulator.gameOver(Bitboard.pack(board), true)
+                ? 0 : 1;
+        }
+        boolean moved = false;
+        for (Side side : Side.values()) {
+            main.setBoard(board);
+            moved |= main.tiltBoard(side);
+        }
+        failures += moved == merges ? 0 : 1;
+        return failures;
+    }
+
+    /** Return 1 if gameOver and gameOverScan disagree on MAIN, else 0. */
+    static int compare(Main main) {
+        return main.gameOver() == main.gameOverScan() ? 0 : 1;
+    }
+
+    /** Fill BOARD with random tiles chosen with RANDOM.  Boards vary in
+     *  how many empty squares and how many distinct values they have, so
+     *  that many of them are full and some are lost or won. */
+    static void randomBoard(int[][] board, Random random) {
+        double empty = random.nextInt(3) * 0.1;
+        int values = 2 + random.nextInt(10);
+        for (int[] row : board) {
+            for (int c = 0; c < row.length; c += 1) {
+                row[c] = random.nextDouble() < empty ? 0
+                    : 2 << random.nextInt(values);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package game2048;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import game2048.gui.Game;
+import game2048.gui.GameRandom;
+
+/** A check of the generators of GameRandom: that the JAVA generator gives
+ *  the tiles that games have always drawn from a java.util.Random with
+ *  the same seed, that each generator continues identically after its
+ *  state is saved and restored, that splitting a generator with a given
+ *  state always gives the same streams, that SPLITMIX generators split
+ *  from the same one have different increments (and so are not one
+ *  stream at different offsets), and that the tiles of each have close
+ *  to the expected frequencies of values and squares.  Exits with status
+ *  1 if any of these fails.
+ *  @author Rafayel Mkrtchyan
+ */
+public class GameRandomCheck {
+
+    /** Number of tiles drawn by each part of the check. */
+    static final int TILES = 1000000;
+
+    /** Number of rows of the boards. */
+    static final int ROWS = 4;
+
+    /** Largest allowed relative error of a frequency. */
+    static final double TOLERANCE = 0.01;
+
+    /** Run the check.  ARGS is unused. */
+    public static void main(String... args) {
+        long failures;
+        failures = javaTiles();
+        for (String name : new String[] { GameRandom.JAVA,
+                                          GameRandom.SPLITMIX }) {
+            failures += restore(name) + split(name) + frequencies(name);
+        }
+        failures += siblings();
+        System.out.printf("%d failures%n", failures);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /** Return the number of tiles of the JAVA generator that differ from
+     *  those drawn from a java.util.Random as by Game. */
+    static long javaTiles() {
+        GameRandom random = GameRandom.create(GameRandom.JAVA, 2048);
+        Random expected = new Random(2048);
+        long failures;
+        failures = 0;
+        for (int k = 0; k < TILES; k += 1) {
+            int value = 2 * (1 + (int) (expected.nextDouble()
+                                        / Game.LOW_TILE_PROBABILITY));
+            int row = expected.nextInt(ROWS), col = expected.nextInt(ROWS);
+            int tile = random.nextTile(ROWS);
+            failures += GameRandom.tileValue(tile) == value
+                && GameRandom.tileRow(tile) == row
+                && GameRandom.tileColumn(tile) == col ? 0 : 1;
+        }
+        return failures;
+    }
+
+    /** Return the number of tiles of generator NAME that differ after its
+     *  state is restored. */
+    static long restore(String name) {
+        GameRandom random = GameRandom.create(name, 2048);
+        long failures;
+        failures = 0;
+        for (int k = 0; k < TILES / 1000; k += 1) {
+            long state = random.state();
+            int[] tiles = tiles(random, 1000);
+            random.setState(state);
+            for (int tile : tiles) {
+                failures += random.nextTile(ROWS) == tile ? 0 : 1;
+            }
+        }
+        return failures;
+    }
+
+    /** Return the number of tiles of generators split in the same pattern
+     *  from two generators NAME with the same seed that differ, or that
+     *  coincide across a split. */
+    static long split(String name) {
+        GameRandom a = GameRandom.create(name, 2048),
+            b = GameRandom.create(name, 2048);
+        long failures;
+        failures = 0;
+        for (int k = 0; k < 100; k += 1) {
+            GameRandom a1 = a.split(), b1 = b.split();
+            long x = a1.nextLong(), y = a.nextLong();
+            failures += x == b1.nextLong() && y == b.nextLong() ? 0 : 1;
+            failures += x != y ? 0 : 1;
+        }
+        return failures;
+    }
+
+    /** Return the number of SPLITMIX generators, among 1000 split in turn
+     *  from one generator, whose states advance by an even increment or by
+     *  the same increment as an earlier one. */
+    static long siblings() {
+        GameRandom parent = GameRandom.create(GameRandom.SPLITMIX, 2048);
+        Set<Long> gammas = new HashSet<>();
+        long failures;
+        failures = 0;
+        for (int k = 0; k < 1000; k += 1) {
+            GameRandom child = parent.split();
+            long state = child.state();
+            child.nextLong();
+            long gamma = child.state() - state;
+            failures += (gamma & 1) == 1 && gammas.add(gamma) ? 0 : 1;
+        }
+        return failures;
+    }
+
+    /** Return the number of frequencies of values, rows, and columns of
+     *  the tiles of generator NAME that are off by more than
+     *  TOLERANCE. */
+    static long frequencies(String name) {
+        GameRandom random = GameRandom.create(name, 2048);
+        int low;
+        int[] rows = new int[ROWS], cols = new int[ROWS];
+        low = 0;
+        for (int tile : tiles(random, TILES)) {
+            low += GameRandom.tileValue(tile) == 2 ? 1 : 0;
+            rows[GameRandom.tileRow(tile)] += 1;
+            cols[GameRandom.tileColumn(tile)] += 1;
+        }
+        long failures;
+        failures = off(low, Game.LOW_TILE_PROBABILITY) ? 1 : 0;
+        for (int k = 0; k < ROWS; k += 1) {
+            failures += off(rows[k], 1.0 / ROWS) ? 1 : 0;
+            failures += off(cols[k], 1.0 / ROWS) ? 1 : 0;
+        }
+        return failures;
+    }
+
+    /** Return true iff COUNT of TILES differs from the fraction P by more
+     *  than TOLERANCE. */
+    static boolean off(int count, double p) {
+        return Math.abs(count / (p * TILES) - 1) > TOLERANCE;
+    }
+
+    /** Return N tiles drawn from RANDOM. */
+    static int[] tiles(GameRandom random, int n) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = random.nextTile(ROWS);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+package game2048;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import game2048.gui.GameRandom;
+
+/** Benchmarks for complete games with random moves.  Comparing play
+ *  with metrics "off" and "on" gives the cost of --metrics, and play with
+ *  metrics "off" against earlier versions gives the cost of the
+ *  instrumentation when it is disabled.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlayBenchmark {
+
+    /** Board engine selected by --engine. */
+    @Param({ "array", "bitboard" })
+    public String engine;
+
+    /** Whether play collects metrics for --metrics ("off" or "on"). */
+    @Param({ "off", "on" })
+    public String metrics;
+
+    /** Create the game. */
+    @Setup
+    public void setup() throws IOException {
+        if (metrics.equals("on")) {
+            _metricsFile = Files.createTempFile("metrics", ".json");
+            _main = Boards.newMain(engine, "--ai=random",
+                                   "--metrics=" + _metricsFile);
+        } else {
+            _main = Boards.newMain(engine, "--ai=random");
+        }
+    }
+
+    /** Remove the metrics file, if any. */
+    @TearDown
+    public void tearDown() throws IOException {
+        if (_metricsFile != null) {
+            Files.deleteIfExists(_metricsFile);
+        }
+    }
+
+    /** Play one game through Main.play and Game. */
+    @Benchmark
+    public boolean play() {
+        return _main.play();
+    }
+
+    /** Play one game on a packed board, as for --simulate. */
+    @Benchmark
+    public long packedPlay() {
+        long board = Simulator.randomPiece(0, _random);
+        long moves = 0;
+        while (true) {
+            if (!Simulator.gameOver(board)) {
+                board = Simulator.randomPiece(board, _random);
+            }
+            if (Simulator.gameOver(board)) {
+                return moves;
+            }
+            board = Bitboard.tilt(board, _policy.move(board, _random));
+            moves += 1;
+        }
+    }
+
+    /** The game being played. */
+    private Main _main;
+    /** File written by --metrics, or null. */
+    private Path _metricsFile;
+    /** Policy for packedPlay. */
+    private Policy _policy = new RandomPolicy();
+    /** Source of random tiles and moves for packedPlay. */
+    private GameRandom _random = GameRandom.create(GameRandom.JAVA, 2048);
+}
@@ -0,0 +1,75 @@
+package game2048;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import game2048.Main.Side;
+
+/** Benchmarks for the Monte Carlo policy.  Comparing the time per move
+ *  for different numbers of threads shows how well playouts scale with
+ *  cores.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RolloutBenchmark {
+
+    /** Number of threads in the pool running the playouts. */
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    /** Create the pool and policy. */
+    @Setup(Level.Trial)
+    public void setup() {
+        _pool = new ForkJoinPool(threads);
+        _policy = new MonteCarlo(MonteCarlo.DEFAULT_ROLLOUTS, 0);
+        _board = Bitboard.pack(Boards.MIDGAME);
+    }
+
+    /** Shut down the pool. */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _pool.shutdown();
+    }
+
+    /** Choose one move with DEFAULT_ROLLOUTS playouts of each move. */
+    @Benchmark
+    public Side move() {
+        return _pool.submit(() -> _policy.move(_board, _random)).join();
+    }
+
+    /** A single playout on one thread. */
+    @Benchmark
+    public int playout() {
+        return MonteCarlo.playout(_board, _splittable, _nexts, _gains);
+    }
+
+    /** Pool running the playouts. */
+    private ForkJoinPool _pool;
+    /** Policy under test. */
+    private MonteCarlo _policy;
+    /** Starting position. */
+    private long _board;
+    /** Source of seeds for move. */
+    private Random _random = new Random(2048);
+    /** Source of random tiles and moves for playout. */
+    private SplittableRandom _splittable = new SplittableRandom(2048);
+    /** Scratch space for playout. */
+    private long[] _nexts = new long[Side.values().length];
+    /** Scratch space for playout. */
+    private int[] _gains = new int[Side.values().length];
+}
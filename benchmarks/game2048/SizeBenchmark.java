@@ -0,0 +1,68 @@
+package game2048;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import game2048.Main.Side;
+
+/** Benchmarks for Main.tiltBoard on boards from 4x4 to 8x8 (--size), to
+ *  show how the cost of a move grows with the size of the board for each
+ *  engine.  As in TiltBenchmark, each operation first restores a mid-game
+ *  board (see Boards.midgame), whose cost is measured on its own by
+ *  reset.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SizeBenchmark {
+
+    /** Number of rows and of columns. */
+    @Param({ "4", "5", "6", "7", "8" })
+    public int size;
+
+    /** Board engine selected by --engine. */
+    @Param({ "array", "lanes" })
+    public String engine;
+
+    /** Direction of the tilt (the name of a Side, which is not public,
+     *  and so cannot be the type of a parameter). */
+    @Param({ "NORTH", "WEST" })
+    public String side;
+
+    /** Create the game. */
+    @Setup
+    public void setup() {
+        _side = Side.valueOf(side);
+        _main = Boards.newMain(engine, "--size=" + size);
+        _board = Boards.midgame(size);
+    }
+
+    /** Restore the board only. */
+    @Benchmark
+    public void reset() {
+        _main.setBoard(_board);
+    }
+
+    /** Restore the board and tilt it toward side. */
+    @Benchmark
+    public boolean tilt() {
+        _main.setBoard(_board);
+        return _main.tiltBoard(_side);
+    }
+
+    /** The Side named by side. */
+    private Side _side;
+    /** The game being tilted. */
+    private Main _main;
+    /** The board restored before each tilt. */
+    private int[][] _board;
+}
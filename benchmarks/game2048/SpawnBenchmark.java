@@ -0,0 +1,62 @@
+package game2048;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import game2048.gui.GameRandom;
+
+/** Benchmarks for Main.setRandomPiece on a board with one empty square,
+ *  with each PRNG selected by --rng.  As for TiltBenchmark, reset
+ *  measures the cost of restoring the board.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpawnBenchmark {
+
+    /** PRNG selected by --rng. */
+    @Param({ "java", "splitmix" })
+    public String rng;
+
+    /** Create the game. */
+    @Setup
+    public void setup() {
+        _main = Boards.newMain("array", "--rng=" + rng);
+        _random = GameRandom.create(rng, 2048);
+    }
+
+    /** Restore the board only. */
+    @Benchmark
+    public void reset() {
+        _main.setBoard(Boards.NEAR_FULL);
+    }
+
+    /** Restore the board and fill its empty square. */
+    @Benchmark
+    public void setRandomPiece() {
+        _main.setBoard(Boards.NEAR_FULL);
+        _main.setRandomPiece();
+    }
+
+    /** Fill the empty square of the packed board, without a Game. */
+    @Benchmark
+    public long packedRandomPiece() {
+        return Simulator.randomPiece(_packed, _random);
+    }
+
+    /** The game being filled. */
+    private Main _main;
+    /** Packed form of Boards.NEAR_FULL. */
+    private long _packed = Bitboard.pack(Boards.NEAR_FULL);
+    /** Source of random tiles for packedRandomPiece. */
+    private GameRandom _random;
+}
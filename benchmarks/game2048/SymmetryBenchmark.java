@@ -0,0 +1,76 @@
+package game2048;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks for Symmetry.  Each operation takes the next of a fixed
+ *  cycle of random boards, so that the branches of canonicalTransform
+ *  are not perfectly predicted; next alone measures that cost.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SymmetryBenchmark {
+
+    /** Number of boards in the cycle (a power of 2). */
+    static final int BOARDS = 1024;
+
+    /** Fill the cycle of boards. */
+    @Setup
+    public void setup() {
+        Random random = new Random(2048);
+        for (int k = 0; k < BOARDS; k += 1) {
+            _boards[k] = SymmetryCheck.randomBoard(random);
+        }
+    }
+
+    /** Only take the next board. */
+    @Benchmark
+    public long next() {
+        return nextBoard();
+    }
+
+    /** Compute the canonical board. */
+    @Benchmark
+    public long canonical() {
+        return Symmetry.canonical(nextBoard());
+    }
+
+    /** Compute the transform to the canonical board. */
+    @Benchmark
+    public int canonicalTransform() {
+        return Symmetry.canonicalTransform(nextBoard());
+    }
+
+    /** Compute the Zobrist hash. */
+    @Benchmark
+    public long hash() {
+        return Symmetry.hash(nextBoard());
+    }
+
+    /** Compute the Zobrist hash of the canonical board. */
+    @Benchmark
+    public long canonicalHash() {
+        return Symmetry.canonicalHash(nextBoard());
+    }
+
+    /** Return the next board of the cycle. */
+    private long nextBoard() {
+        _next = (_next + 1) & (BOARDS - 1);
+        return _boards[_next];
+    }
+
+    /** The cycle of boards. */
+    private long[] _boards = new long[BOARDS];
+    /** Index of the last board taken. */
+    private int _next;
+}
@@ -0,0 +1,75 @@
+package game2048;
+
+import java.util.Random;
+
+import game2048.Main.Side;
+
+/** A check of Symmetry on random packed boards: that each transform is
+ *  undone by undo, that tilts commute with the transforms when sides are
+ *  mapped by Symmetry.transform and back by Symmetry.original, that all
+ *  images of a board have the same canonical board and canonical hash,
+ *  that canonicalTransform yields the canonical board, and that
+ *  Symmetry.update agrees with Symmetry.hash.  Exits with status 1 if any
+ *  of these fails.
+ *  @author Rafayel Mkrtchyan
+ */
+public class SymmetryCheck {
+
+    /** Number of random boards to check. */
+    static final int BOARDS = 1000000;
+
+    /** Run the check.  ARGS is unused. */
+    public static void main(String... args) {
+        Random random = new Random(2048);
+        Side[] sides = Side.values();
+        long failures;
+        failures = 0;
+
+        for (int k = 0; k < BOARDS; k += 1) {
+            long board = randomBoard(random);
+            long canonical = Symmetry.canonical(board);
+            long hash = Symmetry.canonicalHash(board);
+            int t0 = Symmetry.canonicalTransform(board);
+            failures += Symmetry.apply(board, t0) == canonical ? 0 : 1;
+            for (int t = 0; t < Symmetry.TRANSFORMS; t += 1) {
+                long image = Symmetry.apply(board, t);
+                failures += Symmetry.undo(image, t) == board ? 0 : 1;
+                failures += Symmetry.canonical(image) == canonical ? 0 : 1;
+                failures += Symmetry.canonicalHash(image) == hash ? 0 : 1;
+                for (Side side : sides) {
+                    Side mapped = Symmetry.transform(side, t);
+                    failures += Symmetry.original(mapped, t) == side ? 0 : 1;
+                    failures += Symmetry.apply(Bitboard.tilt(board, side), t)
+                        == Bitboard.tilt(image, mapped) ? 0 : 1;
+                    failures += Bitboard.score(board, side)
+                        == Bitboard.score(image, mapped) ? 0 : 1;
+                }
+            }
+            int r = random.nextInt(Bitboard.SIZE),
+                c = random.nextInt(Bitboard.SIZE),
+                e = random.nextInt(Bitboard.MAX_EXPONENT + 1);
+            long changed = Bitboard.set(board, r, c, Bitboard.value(e));
+            failures += Symmetry.update(Symmetry.hash(board), r, c,
+                                        Bitboard.getExponent(board, r, c), e)
+                == Symmetry.hash(changed) ? 0 : 1;
+        }
+
+        System.out.printf("%d boards, %d failures%n", BOARDS, failures);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /** Return a random packed board chosen with RANDOM, with about a
+     *  third of its squares empty and its exponents drawn from a range
+     *  small enough that tilts often merge. */
+    static long randomBoard(Random random) {
+        int values = 2 + random.nextInt(10);
+        long result = 0;
+        for (int k = 0; k < Bitboard.SIZE * Bitboard.SIZE; k += 1) {
+            if (random.nextInt(3) != 0) {
+                result |= (long) (1 + random.nextInt(values)) << (4 * k);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,68 @@
+package game2048;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import game2048.Main.Side;
+
+/** Benchmarks for Main.tiltBoard.  Each operation first restores a
+ *  mid-game board with Main.setBoard, whose cost is measured on its own
+ *  by reset, so the cost of a tilt is the difference between tilt and
+ *  reset.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TiltBenchmark {
+
+    /** Direction of the tilt (the name of a Side, which is not public,
+     *  and so cannot be the type of a parameter). */
+    @Param({ "NORTH", "EAST", "SOUTH", "WEST" })
+    public String side;
+
+    /** Board engine selected by --engine. */
+    @Param({ "array", "bitboard" })
+    public String engine;
+
+    /** Create the game. */
+    @Setup
+    public void setup() {
+        _side = Side.valueOf(side);
+        _main = Boards.newMain(engine);
+    }
+
+    /** Restore the board only. */
+    @Benchmark
+    public void reset() {
+        _main.setBoard(Boards.MIDGAME);
+    }
+
+    /** Restore the board and tilt it toward side. */
+    @Benchmark
+    public boolean tilt() {
+        _main.setBoard(Boards.MIDGAME);
+        return _main.tiltBoard(_side);
+    }
+
+    /** Tilt the packed board toward side, without a Game. */
+    @Benchmark
+    public long packedTilt() {
+        return Bitboard.tilt(_packed, _side);
+    }
+
+    /** The Side named by side. */
+    private Side _side;
+    /** The game being tilted. */
+    private Main _main;
+    /** Packed form of Boards.MIDGAME. */
+    private long _packed = Bitboard.pack(Boards.MIDGAME);
+}
@@ -0,0 +1,96 @@
+package game2048;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import game2048.Main.Side;
+
+/** Benchmarks for the TiltKernels against the lookup tables of Bitboard.
+ *  Each operation tilts a batch of random boards toward the four sides in
+ *  turn, so the time per board is the time per operation divided by
+ *  boards.  The vector kernel must have been compiled (see
+ *  vector/Makefile); its speed depends on the vector instructions the JVM
+ *  uses, which can be limited to compare, for example, AVX2 with no AVX
+ *  at all on the same machine:
+ *
+ *      make bench BENCHFLAGS="TiltKernel -jvmArgsAppend -XX:UseAVX=2"
+ *      make bench BENCHFLAGS="TiltKernel -jvmArgsAppend -XX:UseAVX=0"
+ *
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class TiltKernelBenchmark {
+
+    /** Number of boards in the batch. */
+    @Param({ "4096" })
+    public int boards;
+
+    /** The kernel: "table" (Bitboard.tilt on each board), "swar"
+     *  (SwarTilt), or "vector" (VectorTilt). */
+    @Param({ "table", "swar", "vector" })
+    public String kernel;
+
+    /** Create the kernel and the boards. */
+    @Setup
+    public void setup() {
+        switch (kernel) {
+        case "table":
+            _kernel = (boards0, out, n, side) -> {
+                for (int k = 0; k < n; k += 1) {
+                    out[k] = Bitboard.tilt(boards0[k], side);
+                }
+            };
+            break;
+        case "swar":
+            _kernel = new SwarTilt();
+            break;
+        case "vector":
+            _kernel = TiltKernel.best();
+            if (_kernel instanceof SwarTilt) {
+                throw new IllegalStateException("vector kernel not "
+                                                + "available");
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown kernel: " + kernel);
+        }
+        Random random = new Random(2048);
+        _boards = new long[boards];
+        _out = new long[boards];
+        for (int k = 0; k < boards; k += 1) {
+            _boards[k] = SymmetryCheck.randomBoard(random);
+        }
+    }
+
+    /** Tilt the batch toward each side. */
+    @Benchmark
+    public long[] tilt() {
+        for (Side side : SIDES) {
+            _kernel.tilt(_boards, _out, boards, side);
+        }
+        return _out;
+    }
+
+    /** The four sides. */
+    private static final Side[] SIDES = Side.values();
+
+    /** The kernel measured. */
+    private TiltKernel _kernel;
+    /** The boards tilted. */
+    private long[] _boards;
+    /** The tilted boards. */
+    private long[] _out;
+}
@@ -0,0 +1,56 @@
+package game2048;
+
+import java.util.Random;
+
+import game2048.Main.Side;
+
+/** A check that SwarTilt and TiltKernel.best() tilt random packed boards
+ *  toward each side exactly as Bitboard.tilt does, for batch sizes that
+ *  do and do not fill whole vectors.  Reports which kernel best returned:
+ *  the vector kernel is checked only if it has been compiled (see
+ *  vector/Makefile) and the JVM was started with --add-modules
+ *  jdk.incubator.vector.  Exits with status 1 if any board differs.
+ *  @author Rafayel Mkrtchyan
+ */
+public class TiltKernelCheck {
+
+    /** Number of batches of random boards to check. */
+    static final int BATCHES = 20000;
+
+    /** Largest number of boards in a batch. */
+    static final int MAX_BATCH = 67;
+
+    /** Run the check.  ARGS is unused. */
+    public static void main(String... args) {
+        Random random = new Random(2048);
+        TiltKernel[] kernels = { new SwarTilt(), TiltKernel.best() };
+        long[] boards = new long[MAX_BATCH];
+        long[] out = new long[MAX_BATCH];
+        long failures, tilts;
+        failures = tilts = 0;
+
+        for (int b = 0; b < BATCHES; b += 1) {
+            int n = 1 + random.nextInt(MAX_BATCH);
+            for (int k = 0; k < n; k += 1) {
+                boards[k] = SymmetryCheck.randomBoard(random);
+            }
+            for (TiltKernel kernel : kernels) {
+                for (Side side : Side.values()) {
+                    kernel.tilt(boards, out, n, side);
+                    for (int k = 0; k < n; k += 1) {
+                        failures +=
+                            out[k] == Bitboard.tilt(boards[k], side) ? 0 : 1;
+                    }
+                    tilts += n;
+                }
+            }
+        }
+
+        System.out.printf("%s and %s: %d tilts, %d failures%n",
+                          kernels[0].getClass().getSimpleName(),
+                          kernels[1].getClass().getSimpleName(),
+                          tilts, failures);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+}
@@ -0,0 +1,97 @@
+package game2048;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import game2048.Main.Side;
+
+/** Benchmarks for lookups in a ValueTable of random boards in a temporary
+ *  file, of boards that are present (hit) and absent (miss).  With many
+ *  entries, the time includes cache and TLB misses in the mapped file.
+ *  @author Rafayel Mkrtchyan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueTableBenchmark {
+
+    /** Number of boards looked up in turn. */
+    static final int BOARDS = 1 << 16;
+
+    /** Log2 of the number of entries in the table. */
+    @Param({ "16", "24" })
+    public int bits;
+
+    /** Fill the table and choose the boards. */
+    @Setup
+    public void setup() throws IOException {
+        _file = Files.createTempFile("values", ".bin");
+        Side[] sides = Side.values();
+        Random random = new Random(2048);
+        try (ValueTable table = new ValueTable(_file, bits + 1, 3, false)) {
+            for (long k = 0; k < 1L << bits; k += 1) {
+                long board = SymmetryCheck.randomBoard(random) | 1;
+                if (k < BOARDS) {
+                    _present[(int) k] = board;
+                }
+                table.put(board, random.nextFloat(),
+                          sides[random.nextInt(sides.length)]);
+            }
+        }
+        for (int k = 0; k < BOARDS; k += 1) {
+            _absent[k] = SymmetryCheck.randomBoard(random) | 0xF;
+        }
+        _table = new ValueTable(_file);
+    }
+
+    /** Remove the table. */
+    @TearDown
+    public void tearDown() throws IOException {
+        _table.close();
+        Files.deleteIfExists(_file);
+    }
+
+    /** Look up the value of a board in the table. */
+    @Benchmark
+    public float valueHit() {
+        _next = (_next + 1) & (BOARDS - 1);
+        return _table.value(_present[_next]);
+    }
+
+    /** Look up the move for a board in the table. */
+    @Benchmark
+    public Side moveHit() {
+        _next = (_next + 1) & (BOARDS - 1);
+        return _table.move(_present[_next]);
+    }
+
+    /** Look up the value of a board not in the table. */
+    @Benchmark
+    public float valueMiss() {
+        _next = (_next + 1) & (BOARDS - 1);
+        return _table.value(_absent[_next]);
+    }
+
+    /** The temporary file. */
+    private Path _file;
+    /** The table. */
+    private ValueTable _table;
+    /** Boards in and not in the table. */
+    private final long[] _present = new long[BOARDS],
+        _absent = new long[BOARDS];
+    /** Index of the board last looked up. */
+    private int _next;
+}
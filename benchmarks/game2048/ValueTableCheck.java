@@ -0,0 +1,125 @@
+package game2048;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import game2048.Main.Side;
+
+/** A check of ValueTable: fills a table in a temporary file with random
+ *  boards, values, and moves, reopens it for reading, and checks that
+ *  every symmetric image of each board finds its value and the
+ *  correspondingly transformed move (or, on a board that is its own
+ *  image, a move equivalent to it), that boards never stored are
+ *  absent, that the header survives, and that lookups allocate no memory
+ *  (as measured by the HotSpot per-thread allocation counter).  Exits
+ *  with status 1 if any of these fails.
+ *  @author Rafayel Mkrtchyan
+ */
+public class ValueTableCheck {
+
+    /** Number of boards stored. */
+    static final int BOARDS = 100000;
+
+    /** Log2 of the number of slots of the table. */
+    static final int BITS = 18;
+
+    /** Number of lookups measured for allocation. */
+    static final int LOOKUPS = 1000000;
+
+    /** Run the check.  ARGS is unused. */
+    public static void main(String... args) throws IOException {
+        Path file = Files.createTempFile("values", ".bin");
+        try {
+            System.exit(check(file) ? 0 : 1);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Run the check with a table in FILE, returning true iff it
+     *  passes. */
+    static boolean check(Path file) throws IOException {
+        Side[] sides = Side.values();
+        long[] boards = new long[BOARDS];
+        float[] values = new float[BOARDS];
+        Side[] moves = new Side[BOARDS];
+        long failures;
+        failures = 0;
+
+        Random random = new Random(2048);
+        try (ValueTable table = new ValueTable(file, BITS, 5, true)) {
+            for (int k = 0; k < BOARDS; k += 1) {
+                boards[k] = SymmetryCheck.randomBoard(random) | 1;
+                values[k] = random.nextFloat() * 1e5f;
+                moves[k] = sides[random.nextInt(sides.length)];
+                if (!table.put(boards[k], values[k], moves[k])) {
+                    values[k] = table.value(boards[k]);
+                    moves[k] = table.move(boards[k]);
+                }
+            }
+        }
+
+        ValueTable table = new ValueTable(file);
+        failures += table.depth() == 5 && table.endless()
+            && table.capacity() == 1L << BITS ? 0 : 1;
+        long stored = table.size();
+        for (int k = 0; k < BOARDS; k += 1) {
+            for (int t = 0; t < Symmetry.TRANSFORMS; t += 1) {
+                long image = Symmetry.apply(boards[k], t);
+                failures += table.value(image) == values[k] ? 0 : 1;
+                failures += sameMove(image, table.move(image),
+                                     Symmetry.transform(moves[k], t))
+                    ? 0 : 1;
+            }
+        }
+        Random absent = new Random(4096);
+        for (int k = 0; k < BOARDS; k += 1) {
+            /* No stored board has a tile of exponent 15. */
+            long board = SymmetryCheck.randomBoard(absent) | 0xF;
+            failures += Float.isNaN(table.value(board))
+                && table.move(board) == null ? 0 : 1;
+        }
+
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        _sink = lookups(table, boards);
+        long before = threads.getThreadAllocatedBytes(id);
+        _sink += lookups(table, boards);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        table.close();
+
+        System.out.printf("%d entries, %d failures, %d bytes allocated in "
+                          + "%d lookups%n", stored, failures, allocated,
+                          2 * LOOKUPS);
+        return failures == 0 && allocated == 0;
+    }
+
+    /** Return true iff moves A and B on BOARD are the same or, since
+     *  BOARD is symmetric, give symmetric results. */
+    static boolean sameMove(long board, Side a, Side b) {
+        return a == b
+            || a != null && b != null
+               && Symmetry.canonical(Bitboard.tilt(board, a))
+                  == Symmetry.canonical(Bitboard.tilt(board, b));
+    }
+
+    /** Look up LOOKUPS values and moves of BOARDS in TABLE, and return a
+     *  number that depends on the results. */
+    static long lookups(ValueTable table, long[] boards) {
+        long result = 0;
+        for (int k = 0; k < LOOKUPS; k += 1) {
+            long board = boards[k % boards.length];
+            result += (long) table.value(board)
+                + table.move(board).ordinal();
+        }
+        return result;
+    }
+
+    /** Results of lookups, kept so that they are not optimized away. */
+    private static long _sink;
+}
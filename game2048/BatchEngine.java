@@ -0,0 +1,172 @@
+package game2048;
+
+import game2048.Main.Side;
+import game2048.gui.Game;
+
+/** Many independent 4x4 games advanced in lockstep, for workloads such as
+ *  training that need a great many game steps.  The games are kept as a
+ *  structure of arrays rather than as Main or Game objects: game k has
+ *  packed board (see Bitboard) _boards[k], score _scores[k], and a
+ *  SplitMix64 PRNG whose state is _seeds[k], and bit k of the bit set
+ *  _over is set when it has ended.  A step applies one move to every game
+ *  in a single loop over these arrays, placing each new tile with a
+ *  single draw from the game's PRNG (as for --spawn=indexed, though not
+ *  with the same PRNG), and allocates nothing.  As in Main, a move that
+ *  does not change a board does nothing.
+ *  @author Rafayel Mkrtchyan
+ */
+class BatchEngine {
+
+    /** A batch of GAMES games, whose random tiles are derived from SEED,
+     *  ending when a tile reaches MAXTILEVALUE unless ENDLESS, and
+     *  otherwise when no move is possible.  All games start with two
+     *  tiles. */
+    BatchEngine(int games, long seed, boolean endless) {
+        if (games <= 0) {
+            throw new IllegalArgumentException("need at least one game");
+        }
+        _games = games;
+        _endless = endless;
+        _boards = new long[games];
+        _scores = new int[games];
+        _seeds = new long[games];
+        _over = new long[(games + Long.SIZE - 1) / Long.SIZE];
+        for (int k = 0; k < games; k += 1) {
+            _seeds[k] = Simulator.gameSeed(seed, k);
+            restart(k);
+        }
+    }
+
+    /** Return the number of games. */
+    int games() {
+        return _games;
+    }
+
+    /** Start game K again, on a board with two random tiles. */
+    void restart(int k) {
+        _boards[k] = spawn(spawn(0, k), k);
+        _scores[k] = 0;
+        _over[k >>> 6] &= ~(1L << k);
+    }
+
+    /** Start again every game that has ended, returning their number. */
+    int restartOver() {
+        int n;
+        n = 0;
+        for (int w = 0; w < _over.length; w += 1) {
+            for (long bits = _over[w]; bits != 0; bits &= bits - 1) {
+                restart(w * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Apply move MOVES[k] (the ordinal of a Side) to each game k that has
+     *  not ended, placing a random tile if the move changes its board, and
+     *  set REWARDS[k] to the score it gains (0 for a game that has ended
+     *  or a move that changes nothing).  Return the number of games that
+     *  end in this step; bit k of over() is then set for each game k that
+     *  has ended. */
+    int step(int[] moves, int[] rewards) {
+        int ended;
+        ended = 0;
+        for (int k = 0; k < _games; k += 1) {
+            long board = _boards[k];
+            int reward = 0;
+            if ((_over[k >>> 6] & (1L << k)) == 0) {
+                Side side = SIDES[moves[k]];
+                long next = Bitboard.tilt(board, side);
+                if (next != board) {
+                    reward = Bitboard.score(board, side);
+                    next = spawn(next, k);
+                    _boards[k] = next;
+                    _scores[k] += reward;
+                    if (Simulator.gameOver(next, _endless)) {
+                        _over[k >>> 6] |= 1L << k;
+                        ended += 1;
+                    }
+                }
+            }
+            rewards[k] = reward;
+        }
+        return ended;
+    }
+
+    /** Return BOARD, the board of game K, with a tile added to a random,
+     *  empty square chosen with a single draw from the game's PRNG, with a
+     *  value chosen as Game.getRandomTile would.  Returns BOARD unchanged
+     *  if it is full. */
+    private long spawn(long board, int k) {
+        long free = Bitboard.emptySquares(board);
+        int empty = Long.bitCount(free);
+        if (empty == 0) {
+            return board;
+        }
+        long seed = _seeds[k] + GOLDEN_GAMMA;
+        _seeds[k] = seed;
+        long r = mix(seed);
+        long value = (r >>> (Long.SIZE - LOW_TILE_BITS)) < LOW_TILE_LIMIT
+            ? 1 : 2;
+        int n = (int) (((r & 0xFFFFFFFFL) * empty) >>> 32);
+        for (; n > 0; n -= 1) {
+            free &= free - 1;
+        }
+        return board | (value << Long.numberOfTrailingZeros(free));
+    }
+
+    /** Return the SplitMix64 output for state Z. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Return the board of game K. */
+    long board(int k) {
+        return _boards[k];
+    }
+
+    /** Return the score of game K. */
+    int score(int k) {
+        return _scores[k];
+    }
+
+    /** Return true iff game K has ended. */
+    boolean over(int k) {
+        return (_over[k >>> 6] & (1L << k)) != 0;
+    }
+
+    /** Return the bit set of ended games: game k has ended iff bit k % 64
+     *  of element k / 64 is set.  The array is shared with this engine,
+     *  and must not be modified. */
+    long[] over() {
+        return _over;
+    }
+
+    /** The four sides, indexed by ordinal. */
+    private static final Side[] SIDES = Side.values();
+
+    /** Increment of the SplitMix64 state per draw. */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** Number of bits of a draw that choose the value of a new tile. */
+    private static final int LOW_TILE_BITS = 24;
+
+    /** A new tile is a 2 iff those bits are less than this. */
+    private static final long LOW_TILE_LIMIT =
+        (long) (Game.LOW_TILE_PROBABILITY * (1 << LOW_TILE_BITS));
+
+    /** Number of games. */
+    private final int _games;
+    /** True iff games continue past MAXTILEVALUE. */
+    private final boolean _endless;
+    /** Packed boards of the games. */
+    private final long[] _boards;
+    /** Scores of the games. */
+    private final int[] _scores;
+    /** PRNG states of the games. */
+    private final long[] _seeds;
+    /** Bit set of the games that have ended. */
+    private final long[] _over;
+}
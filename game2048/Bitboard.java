@@ -0,0 +1,323 @@
+package game2048;
+
+import game2048.Main.Side;
+
+/** Operations on a 4x4 2048 board packed into a single long.  Each of
+ *  the 16 squares occupies one 4-bit nibble holding the base-2 logarithm
+ *  of its tile value (0 for an empty square), so that the square at row R
+ *  and column C is nibble 4 * R + C, counting from the least significant
+ *  end.  Tilts are performed a row at a time by table lookup; columns are
+ *  handled by transposing the board first.  A second table, built when
+ *  first used, records the individual moves and merges of each row's
+ *  tilt, so that a tilt can be animated without repeating it tile by
+ *  tile.  A nibble holds exponents up to 15 (32768), and two such tiles
+ *  are treated as unmergeable.
+ *  @author Rafayel Mkrtchyan
+ */
+final class Bitboard {
+
+    /** Number of rows and of columns of a packed board. */
+    static final int SIZE = 4;
+
+    /** Number of distinct 16-bit rows. */
+    private static final int ROWS = 1 << 16;
+
+    /** Largest exponent that fits in a nibble. */
+    static final int MAX_EXPONENT = 15;
+
+    /** Mask for a single row. */
+    private static final long ROW_MASK = 0xFFFFL;
+
+    /** For each row, the row that results from tilting it toward column 0
+     *  (bits 0-15) and a quarter of the score gained (bits 16-31). */
+    private static final int[] LEFT = new int[ROWS];
+    /** As for LEFT, but tilting toward column SIZE - 1. */
+    private static final int[] RIGHT = new int[ROWS];
+
+    static {
+        int[] line = new int[SIZE];
+        for (int row = 0; row < ROWS; row += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                line[c] = (row >> (4 * c)) & 0xF;
+            }
+            int score = compact(line);
+            int result = 0;
+            for (int c = 0; c < SIZE; c += 1) {
+                result |= line[c] << (4 * c);
+            }
+            LEFT[row] = result | ((score >> 2) << 16);
+            RIGHT[reverse(row)] = reverse(result) | ((score >> 2) << 16);
+        }
+    }
+
+    /** Number of bits describing each tile in the result of lineEvents. */
+    static final int EVENT_BITS = 3;
+
+    /** In the description of a tile in the result of lineEvents, the bits
+     *  holding its destination, and the bit set iff it merges there. */
+    static final int EVENT_DEST = 3, EVENT_MERGE = 4;
+
+    /** Holder of the table for lineEvents, so that the table is built
+     *  only when first used. */
+    private static class Events {
+        /** For each row, its events, as returned by lineEvents. */
+        static final char[] TABLE = new char[ROWS];
+
+        static {
+            for (int row = 0; row < ROWS; row += 1) {
+                int events, dest, last, lastE;
+                events = dest = lastE = 0;
+                last = -1;
+                for (int k = 0; k < SIZE; k += 1) {
+                    int e = (row >> (4 * k)) & 0xF;
+                    if (e == 0) {
+                        continue;
+                    }
+                    if (last != -1 && lastE == e && e < MAX_EXPONENT) {
+                        events |= (last | EVENT_MERGE) << (EVENT_BITS * k);
+                        last = -1;
+                    } else {
+                        events |= dest << (EVENT_BITS * k);
+                        lastE = e;
+                        last = dest;
+                        dest += 1;
+                    }
+                }
+                TABLE[row] = (char) events;
+            }
+        }
+    }
+
+    /** Not instantiable. */
+    private Bitboard() {
+    }
+
+    /** Return the moves and merges performed by tilting ROW, a 16-bit row,
+     *  toward nibble 0, in the same order as a tilt of the board: for the
+     *  tile in each nibble k, bits EVENT_BITS * k and up hold the index of
+     *  the nibble to which it moves (masked by EVENT_DEST), with EVENT_MERGE
+     *  set iff it merges there with the tile that moved there before it.
+     *  The bits for empty nibbles are 0. */
+    static int lineEvents(int row) {
+        return Events.TABLE[row];
+    }
+
+    /** Slide and merge the exponents in LINE toward index 0, in place, as
+     *  for a tilt of one row of the board.  Returns the score gained. */
+    private static int compact(int[] line) {
+        int score, dest, last;
+        score = dest = 0;
+        last = -1;
+        for (int k = 0; k < line.length; k += 1) {
+            int e = line[k];
+            if (e == 0) {
+                continue;
+            }
+            line[k] = 0;
+            if (last != -1 && line[last] == e && e < MAX_EXPONENT) {
+                line[last] = e + 1;
+                score += 1 << (e + 1);
+                last = -1;
+            } else {
+                line[dest] = e;
+                last = dest;
+                dest += 1;
+            }
+        }
+        return score;
+    }
+
+    /** Return the 16-bit row ROW with its four nibbles in reverse order. */
+    private static int reverse(int row) {
+        return ((row & 0xF) << 12) | ((row & 0xF0) << 4)
+            | ((row >> 4) & 0xF0) | ((row >> 12) & 0xF);
+    }
+
+    /** Return BOARD with rows and columns exchanged. */
+    static long transpose(long board) {
+        long a1 = board & 0xF0F00F0FF0F00F0FL;
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    /** Return the exponent for tile value VALUE (0 for an empty
+     *  square). */
+    static int exponent(int value) {
+        return value == 0 ? 0 : Integer.numberOfTrailingZeros(value);
+    }
+
+    /** Return the tile value for exponent E (0 for an empty square). */
+    static int value(int e) {
+        return e == 0 ? 0 : 1 << e;
+    }
+
+    /** Return the tile value at row R and column C of BOARD. */
+    static int get(long board, int r, int c) {
+        return value(getExponent(board, r, c));
+    }
+
+    /** Return the exponent of the tile at row R and column C of BOARD (0
+     *  for an empty square). */
+    static int getExponent(long board, int r, int c) {
+        return (int) (board >>> (4 * (SIZE * r + c))) & 0xF;
+    }
+
+    /** Return BOARD with the square at row R and column C set to tile value
+     *  VALUE. */
+    static long set(long board, int r, int c, int value) {
+        int shift = 4 * (SIZE * r + c);
+        return (board & ~(0xFL << shift))
+            | ((long) exponent(value) << shift);
+    }
+
+    /** Return the packed form of BOARD, where BOARD[r][c] is the tile value
+     *  at row r and column c, or 0. */
+    static long pack(int[][] board) {
+        long result = 0;
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                result = set(result, r, c, board[r][c]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the packed form of BOARD, where BOARD[r][c] is the exponent
+     *  of the tile at row r and column c (at most MAX_EXPONENT), or 0. */
+    static long packExponents(byte[][] board) {
+        long result = 0;
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                result |= (long) board[r][c] << (4 * (SIZE * r + c));
+            }
+        }
+        return result;
+    }
+
+    /** Store the tile values of packed board BOARD into RESULT. */
+    static void unpack(long board, int[][] result) {
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                result[r][c] = get(board, r, c);
+            }
+        }
+    }
+
+    /** Return the result of applying the row table TABLE to each row of
+     *  BOARD. */
+    private static long tiltRows(long board, int[] table) {
+        return (table[(int) (board & ROW_MASK)] & ROW_MASK)
+            | ((table[(int) ((board >>> 16) & ROW_MASK)] & ROW_MASK) << 16)
+            | ((table[(int) ((board >>> 32) & ROW_MASK)] & ROW_MASK) << 32)
+            | ((table[(int) (board >>> 48)] & ROW_MASK) << 48);
+    }
+
+    /** Return the score gained by applying the row table TABLE to each row
+     *  of BOARD. */
+    private static int scoreRows(long board, int[] table) {
+        return 4 * ((table[(int) (board & ROW_MASK)] >>> 16)
+                    + (table[(int) ((board >>> 16) & ROW_MASK)] >>> 16)
+                    + (table[(int) ((board >>> 32) & ROW_MASK)] >>> 16)
+                    + (table[(int) (board >>> 48)] >>> 16));
+    }
+
+    /** Return the result of tilting BOARD toward SIDE. */
+    static long tilt(long board, Side side) {
+        switch (side) {
+        case NORTH:
+            return transpose(tiltRows(transpose(board), LEFT));
+        case SOUTH:
+            return transpose(tiltRows(transpose(board), RIGHT));
+        case WEST:
+            return tiltRows(board, LEFT);
+        case EAST:
+            return tiltRows(board, RIGHT);
+        default:
+            throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return the score gained by tilting BOARD toward SIDE. */
+    static int score(long board, Side side) {
+        switch (side) {
+        case NORTH: case SOUTH:
+            return scoreRows(transpose(board), LEFT);
+        case WEST: case EAST:
+            return scoreRows(board, LEFT);
+        default:
+            throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return the number of empty squares on BOARD. */
+    static int emptyCount(long board) {
+        long occupied = board | (board >>> 1);
+        occupied |= occupied >>> 2;
+        return SIZE * SIZE - Long.bitCount(occupied & 0x1111111111111111L);
+    }
+
+    /** Return a word in which bit 0 of each nibble is set iff the
+     *  corresponding square of BOARD is empty. */
+    static long emptySquares(long board) {
+        return ~nonzeroNibbles(board) & NIBBLE_ONES;
+    }
+
+    /** Return the largest exponent on BOARD. */
+    static int maxExponent(long board) {
+        int result = 0;
+        for (; board != 0; board >>>= 4) {
+            result = Math.max(result, (int) (board & 0xF));
+        }
+        return result;
+    }
+
+    /** Bit 0 of each nibble. */
+    private static final long NIBBLE_ONES = 0x1111111111111111L;
+
+    /** Bit 0 of the nibbles that have a neighbor to their right (in the
+     *  next column) and of those that have one below (in the next row). */
+    private static final long RIGHT_NEIGHBORS = 0x0111011101110111L,
+        LOWER_NEIGHBORS = 0x0000111111111111L;
+
+    /** Return true iff BOARD has a tile of exponent at least E, where
+     *  1 <= E <= 16.  Adds 16 - E to each nibble, in 8-bit lanes so that
+     *  the carries stay apart, and looks for a carry out of a nibble. */
+    static boolean reaches(long board, int e) {
+        long add = (16 - e) * 0x0101010101010101L;
+        long even = (board & 0x0F0F0F0F0F0F0F0FL) + add;
+        long odd = ((board >>> 4) & 0x0F0F0F0F0F0F0F0FL) + add;
+        return ((even | odd) & 0x1010101010101010L) != 0;
+    }
+
+    /** Return true iff some tilt of BOARD changes it: iff it has an empty
+     *  square, or two adjacent equal tiles that are not both of
+     *  MAX_EXPONENT.  Compares all pairs of neighbors at once, without
+     *  tilting. */
+    static boolean canMove(long board) {
+        if (nonzeroNibbles(board) != NIBBLE_ONES) {
+            return true;
+        }
+        long full = board & (board >>> 1);
+        full &= full >>> 2;
+        full &= NIBBLE_ONES;
+        long right = ~nonzeroNibbles(board ^ (board >>> 4))
+            & ~(full & (full >>> 4)) & RIGHT_NEIGHBORS;
+        long lower = ~nonzeroNibbles(board ^ (board >>> 16))
+            & ~(full & (full >>> 16)) & LOWER_NEIGHBORS;
+        return (right | lower) != 0;
+    }
+
+    /** Return a word with bit 0 of each nibble set iff that nibble of X is
+     *  not 0. */
+    private static long nonzeroNibbles(long x) {
+        x |= x >>> 1;
+        x |= x >>> 2;
+        return x & NIBBLE_ONES;
+    }
+
+}
@@ -0,0 +1,243 @@
+package game2048;
+
+import java.util.Random;
+
+import game2048.Main.Side;
+import game2048.gui.Game;
+
+/** A Policy that chooses moves by expectimax search over tilts and the
+ *  random tiles that follow them, with a heuristic evaluation of the
+ *  positions at the search horizon.  The search deepens one move at a
+ *  time up to a maximum depth, abandoning the deepest level if it exceeds
+ *  a time budget.  Values of chance positions are kept in a fixed-size
+ *  transposition cache keyed on the packed board and remaining depth.
+ *  Since cached values are exact, the moves chosen depend only on the
+ *  board, unless the time budget cuts a search short.
+ *  @author Rafayel Mkrtchyan
+ */
+class Expectimax implements Policy {
+
+    /** Default maximum search depth (in moves). */
+    static final int DEFAULT_DEPTH = 3;
+
+    /** Log2 of the number of entries in the transposition cache. */
+    static final int CACHE_BITS = 20;
+
+    /** Number of nodes searched between checks of the time budget. */
+    private static final int CHECK_INTERVAL = 1 << 12;
+
+    /** Weights of the components of the heuristic evaluation of a
+     *  row. */
+    private static final double
+        LOST_PENALTY = 200000.0,
+        EMPTY_WEIGHT = 270.0,
+        MERGES_WEIGHT = 700.0,
+        MONOTONICITY_WEIGHT = 47.0,
+        MONOTONICITY_POWER = 4.0,
+        SUM_WEIGHT = 11.0,
+        SUM_POWER = 3.5;
+
+    /** Heuristic value of each possible 16-bit row or column. */
+    private static final float[] ROW_VALUES = new float[1 << 16];
+
+    static {
+        int[] line = new int[Bitboard.SIZE];
+        for (int row = 0; row < ROW_VALUES.length; row += 1) {
+            for (int k = 0; k < line.length; k += 1) {
+                line[k] = (row >> (4 * k)) & 0xF;
+            }
+            ROW_VALUES[row] = (float) rowValue(line);
+        }
+    }
+
+    /** A searcher to depth DEPTH that spends at most about BUDGET
+     *  milliseconds per move (0 for no limit). */
+    Expectimax(int depth, long budget) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be >= 1");
+        }
+        _depth = depth;
+        _budget = budget * 1000000L;
+    }
+
+    /** Return the heuristic value of a line of exponents LINE: rewards
+     *  empty squares and adjacent equal tiles, and penalizes large tiles
+     *  and lines that are not monotonic. */
+    private static double rowValue(int[] line) {
+        double sum, left, right;
+        int empty, merges, prev, counter;
+        sum = left = right = 0;
+        empty = merges = prev = counter = 0;
+        for (int k = 0; k < line.length; k += 1) {
+            int e = line[k];
+            sum += Math.pow(e, SUM_POWER);
+            if (e == 0) {
+                empty += 1;
+            } else {
+                if (prev == e) {
+                    counter += 1;
+                } else if (counter > 0) {
+                    merges += 1 + counter;
+                    counter = 0;
+                }
+                prev = e;
+            }
+        }
+        if (counter > 0) {
+            merges += 1 + counter;
+        }
+        for (int k = 1; k < line.length; k += 1) {
+            double a = Math.pow(line[k - 1], MONOTONICITY_POWER),
+                b = Math.pow(line[k], MONOTONICITY_POWER);
+            if (line[k - 1] > line[k]) {
+                left += a - b;
+            } else {
+                right += b - a;
+            }
+        }
+        return LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+            - MONOTONICITY_WEIGHT * Math.min(left, right)
+            - SUM_WEIGHT * sum;
+    }
+
+    /** Return the heuristic value of BOARD. */
+    static double evaluate(long board) {
+        long t = Bitboard.transpose(board);
+        double result = 0;
+        for (int k = 0; k < Bitboard.SIZE; k += 1) {
+            result += ROW_VALUES[(int) (board >>> (16 * k)) & 0xFFFF]
+                + ROW_VALUES[(int) (t >>> (16 * k)) & 0xFFFF];
+        }
+        return result;
+    }
+
+    @Override
+    public Side move(long board, Random random) {
+        long start = System.nanoTime();
+        _deadline = _budget == 0 ? Long.MAX_VALUE : start + _budget;
+        Side best = null;
+        for (int depth = 1; depth <= _depth; depth += 1) {
+            _aborted = false;
+            _abortable = depth > 1;
+            Side side = bestMove(board, depth);
+            if (_aborted) {
+                break;
+            }
+            best = side;
+        }
+        _searchTime += System.nanoTime() - start;
+        _moves += 1;
+        return best;
+    }
+
+    /** Return the move on BOARD with the highest value when searched to
+     *  DEPTH moves. */
+    private Side bestMove(long board, int depth) {
+        Side best = null;
+        double bestValue = -1;
+        for (Side side : SIDES) {
+            long next = Bitboard.tilt(board, side);
+            if (next != board) {
+                double value = chanceValue(next, depth);
+                if (value > bestValue) {
+                    best = side;
+                    bestValue = value;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return the expected value of BOARD, on which a random tile is
+     *  about to be placed, searched to DEPTH further moves. */
+    private double chanceValue(long board, int depth) {
+        _cacheProbes += 1;
+        int h = (int) ((board * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+        if (_cacheKeys[h] == board && _cacheDepths[h] == depth) {
+            _cacheHits += 1;
+            return _cacheValues[h];
+        }
+
+        double total = 0;
+        int empty = 0;
+        for (int k = 0; k < Bitboard.SIZE * Bitboard.SIZE; k += 1) {
+            if (((board >>> (4 * k)) & 0xF) == 0) {
+                long two = board | (1L << (4 * k)),
+                    four = board | (2L << (4 * k));
+                total += Game.LOW_TILE_PROBABILITY * maxValue(two, depth - 1)
+                    + (1 - Game.LOW_TILE_PROBABILITY)
+                    * maxValue(four, depth - 1);
+                empty += 1;
+            }
+        }
+        double result = empty == 0 ? maxValue(board, depth - 1)
+            : total / empty;
+        if (!_aborted) {
+            _cacheKeys[h] = board;
+            _cacheDepths[h] = (byte) depth;
+            _cacheValues[h] = result;
+        }
+        return result;
+    }
+
+    /** Return the value of BOARD, on which the player is about to move,
+     *  searched to DEPTH further moves. */
+    private double maxValue(long board, int depth) {
+        _nodes += 1;
+        if (_abortable && (_nodes & (CHECK_INTERVAL - 1)) == 0
+            && System.nanoTime() > _deadline) {
+            _aborted = true;
+        }
+        if (_aborted) {
+            return 0;
+        }
+        if (depth == 0) {
+            return evaluate(board);
+        }
+        double best = 0;
+        for (Side side : SIDES) {
+            long next = Bitboard.tilt(board, side);
+            if (next != board) {
+                best = Math.max(best, chanceValue(next, depth));
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String stats() {
+        double seconds = _searchTime / 1e9;
+        return String.format("%d moves, %d nodes (%.0f nodes/sec), "
+                             + "cache hit rate %.1f%%",
+                             _moves, _nodes,
+                             seconds == 0 ? 0 : _nodes / seconds,
+                             _cacheProbes == 0 ? 0
+                             : 100.0 * _cacheHits / _cacheProbes);
+    }
+
+    /** The four sides. */
+    private static final Side[] SIDES = Side.values();
+
+    /** Maximum search depth. */
+    private final int _depth;
+    /** Time budget per move (nanoseconds), or 0 for none. */
+    private final long _budget;
+    /** Time (as for System.nanoTime) at which the current search must
+     *  stop. */
+    private long _deadline;
+    /** True iff the current search may be, or has been, abandoned. */
+    private boolean _abortable, _aborted;
+
+    /** Boards of cached chance positions. */
+    private final long[] _cacheKeys = new long[1 << CACHE_BITS];
+    /** Remaining search depths of cached positions. */
+    private final byte[] _cacheDepths = new byte[1 << CACHE_BITS];
+    /** Values of cached positions. */
+    private final double[] _cacheValues = new double[1 << CACHE_BITS];
+
+    /** Number of moves chosen, player positions searched, and cache probes
+     *  and hits. */
+    private long _moves, _nodes, _cacheProbes, _cacheHits;
+    /** Total time spent choosing moves (nanoseconds). */
+    private long _searchTime;
+}
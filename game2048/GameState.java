@@ -0,0 +1,75 @@
+package game2048;
+
+import java.util.Arrays;
+
+/** An immutable position of a game of 2048: the tiles on the board, the
+ *  score, and the state of the PRNG that generates random tiles.
+ *  Main.snapshot returns the current position as a GameState and
+ *  Main.restore returns to one, so that a game may be rewound or a
+ *  search may try moves on a live game and then roll them back.  The
+ *  board is held as one byte per square, giving the base-2 logarithm of
+ *  its tile value (0 for an empty square), in row-major order.
+ *  @author Rafayel Mkrtchyan
+ */
+final class GameState {
+
+    /** A position on a SIZE x SIZE board whose square (r, c) holds a tile
+     *  with exponent BOARD[r * SIZE + c], with score SCORE and PRNG state
+     *  RANDOM.  BOARD becomes part of the new GameState, and must not be
+     *  modified by the caller. */
+    GameState(int size, byte[] board, int score, long random) {
+        if (board.length != size * size) {
+            throw new IllegalArgumentException("wrong number of squares");
+        }
+        _size = size;
+        _board = board;
+        _score = score;
+        _random = random;
+    }
+
+    /** Return the number of rows (and of columns). */
+    int size() {
+        return _size;
+    }
+
+    /** Return the exponent of the tile at row R and column C (0 if
+     *  empty). */
+    int get(int r, int c) {
+        return _board[r * _size + c];
+    }
+
+    /** Return the score. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the PRNG state, as for Game.randomState. */
+    long random() {
+        return _random;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof GameState)) {
+            return false;
+        }
+        GameState other = (GameState) obj;
+        return _size == other._size && _score == other._score
+            && _random == other._random && Arrays.equals(_board, other._board);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(_board) * 31 + _score) * 31
+            + Long.hashCode(_random);
+    }
+
+    /** Number of rows and of columns. */
+    private final int _size;
+    /** Exponents of the tiles, in row-major order. */
+    private final byte[] _board;
+    /** The score. */
+    private final int _score;
+    /** The PRNG state. */
+    private final long _random;
+}
@@ -0,0 +1,90 @@
+package game2048;
+
+/** A histogram of non-negative long values (such as latencies in
+ *  nanoseconds), in the manner of an HDR histogram: values below 2 **
+ *  SUB_BITS are counted exactly, and each larger power-of-2 range is
+ *  divided into 2 ** SUB_BITS equal buckets, so that any value is known to
+ *  within about 1 part in 2 ** SUB_BITS.  Recording a value is a few
+ *  arithmetic operations and an array increment, and allocates nothing.
+ *  @author Rafayel Mkrtchyan
+ */
+class Histogram {
+
+    /** Number of bits of each value, after its leading 1, that distinguish
+     *  buckets. */
+    static final int SUB_BITS = 4;
+
+    /** Number of buckets in each power-of-2 range. */
+    private static final int SUB = 1 << SUB_BITS;
+
+    /** Record VALUE (treating negative values as 0). */
+    void record(long value) {
+        value = Math.max(value, 0);
+        _counts[bucket(value)] += 1;
+        _count += 1;
+        _total += value;
+        _max = Math.max(_max, value);
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the sum of the values recorded. */
+    long total() {
+        return _total;
+    }
+
+    /** Return the mean of the values recorded, or 0 if there are none. */
+    double mean() {
+        return _count == 0 ? 0 : (double) _total / _count;
+    }
+
+    /** Return the largest value recorded, or 0 if there are none. */
+    long max() {
+        return _max;
+    }
+
+    /** Return an upper bound (within the precision of the buckets) on the
+     *  least value that is at least as large as the fraction Q (0 <= Q <=
+     *  1) of the values recorded, or 0 if there are none. */
+    long quantile(double q) {
+        long rank = Math.max(1, (long) Math.ceil(q * _count));
+        long seen = 0;
+        for (int b = 0; b < _counts.length; b += 1) {
+            seen += _counts[b];
+            if (seen >= rank) {
+                return Math.min(_max, lowest(b + 1) - 1);
+            }
+        }
+        return _max;
+    }
+
+    /** Return the index of the bucket holding VALUE >= 0. */
+    static int bucket(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        return ((e - SUB_BITS + 1) << SUB_BITS)
+            + (int) ((value >>> (e - SUB_BITS)) & (SUB - 1));
+    }
+
+    /** Return the least value in bucket B. */
+    static long lowest(int b) {
+        if (b < SUB) {
+            return b;
+        }
+        int e = (b >>> SUB_BITS) + SUB_BITS - 1;
+        if (e >= Long.SIZE - 1) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (SUB + (b & (SUB - 1))) << (e - SUB_BITS);
+    }
+
+    /** Number of values in each bucket. */
+    private final long[] _counts = new long[(Long.SIZE - SUB_BITS) * SUB];
+    /** Number, sum, and maximum of the values recorded. */
+    private long _count, _total, _max;
+}
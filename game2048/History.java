@@ -0,0 +1,143 @@
+package game2048;
+
+/** A bounded undo/redo history of the positions of one game.  The
+ *  positions are kept in a ring of parallel arrays rather than as
+ *  GameState objects: each costs one byte per square plus twelve bytes
+ *  for the score and PRNG state (28 bytes on a 4x4 board), recording one
+ *  allocates nothing once the arrays have grown to hold the game, and a
+ *  GameState is created only for a position that is actually returned.
+ *  When the history is full, recording a position discards the oldest.
+ *  @author Rafayel Mkrtchyan
+ */
+class History {
+
+    /** Default maximum number of positions kept. */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Number of positions for which space is first allocated. */
+    private static final int INITIAL_LENGTH = 64;
+
+    /** An empty history for a SIZE x SIZE board, keeping at most CAPACITY
+     *  positions. */
+    History(int size, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        _size = size;
+        _squares = size * size;
+        _capacity = capacity;
+        allocate(Math.min(INITIAL_LENGTH, capacity));
+        clear();
+    }
+
+    /** Remove all positions. */
+    void clear() {
+        _first = 0;
+        _count = 0;
+        _current = -1;
+    }
+
+    /** Record the position whose board is BOARD (exponents, as for
+     *  Main._board), whose score is SCORE, and whose PRNG state is RANDOM,
+     *  as the current position.  Discards any positions that could have
+     *  been reached by redo. */
+    void record(byte[][] board, int score, long random) {
+        _count = _current + 1;
+        if (_count == _capacity) {
+            _first = (_first + 1) % _scores.length;
+            _count -= 1;
+        } else if (_count == _scores.length) {
+            grow();
+        }
+        int k = (_first + _count) % _scores.length;
+        int i = k * _squares;
+        for (int r = 0; r < _size; r += 1) {
+            System.arraycopy(board[r], 0, _boards, i, _size);
+            i += _size;
+        }
+        _scores[k] = score;
+        _randoms[k] = random;
+        _count += 1;
+        _current = _count - 1;
+    }
+
+    /** Make the position before the current one current, and return it.
+     *  Returns null, and has no effect, if there is none. */
+    GameState undo() {
+        if (_current <= 0) {
+            return null;
+        }
+        _current -= 1;
+        return state(_current);
+    }
+
+    /** Make the position after the current one, which undo left,
+     *  current and return it.  Returns null, and has no effect, if there
+     *  is none. */
+    GameState redo() {
+        if (_current + 1 >= _count) {
+            return null;
+        }
+        _current += 1;
+        return state(_current);
+    }
+
+    /** Return the number of positions kept. */
+    int size() {
+        return _count;
+    }
+
+    /** Return position number I, counting from the oldest kept. */
+    private GameState state(int i) {
+        int k = (_first + i) % _scores.length;
+        byte[] board = new byte[_squares];
+        System.arraycopy(_boards, k * _squares, board, 0, _squares);
+        return new GameState(_size, board, _scores[k], _randoms[k]);
+    }
+
+    /** Double the space for positions, up to _capacity, moving the
+     *  positions kept to the start of the new arrays. */
+    private void grow() {
+        byte[] boards = _boards;
+        int[] scores = _scores;
+        long[] randoms = _randoms;
+        allocate(Math.min(2 * scores.length, _capacity));
+        for (int i = 0; i < _count; i += 1) {
+            int k = (_first + i) % scores.length;
+            System.arraycopy(boards, k * _squares, _boards, i * _squares,
+                             _squares);
+            _scores[i] = scores[k];
+            _randoms[i] = randoms[k];
+        }
+        _first = 0;
+    }
+
+    /** Allocate space for LENGTH positions. */
+    private void allocate(int length) {
+        _boards = new byte[length * _squares];
+        _scores = new int[length];
+        _randoms = new long[length];
+    }
+
+    /** Number of rows and of columns. */
+    private final int _size;
+    /** Number of squares. */
+    private final int _squares;
+    /** Maximum number of positions kept. */
+    private final int _capacity;
+    /** Position k (an index in the ring) has board exponents
+     *  _boards[k * _squares .. (k + 1) * _squares - 1] in row-major
+     *  order, score _scores[k], and PRNG state _randoms[k]. */
+    private byte[] _boards;
+    /** Scores of the positions. */
+    private int[] _scores;
+    /** PRNG states of the positions. */
+    private long[] _randoms;
+    /** Ring index of the oldest position. */
+    private int _first;
+    /** Number of positions kept. */
+    private int _count;
+    /** Index (counting from the oldest) of the current position, or -1
+     *  if there is none. */
+    private int _current;
+}
@@ -0,0 +1,153 @@
+package game2048;
+
+import game2048.Main.Side;
+
+/** A square 2048 board of any size from 4 to MAX_SIZE, stored as one
+ *  long "lane" per row.  Each square of a row occupies a BITS-bit field
+ *  holding the base-2 logarithm of its tile value (0 for an empty
+ *  square), with column 0 in the least significant field.  A tilt
+ *  compacts each row or column in a single pass over its fields, so that
+ *  a move costs time proportional to the number of squares.  Tiles of
+ *  exponent MAX_EXPONENT (the largest int power of 2) do not merge.
+ *  @author Rafayel Mkrtchyan
+ */
+final class LaneBoard {
+
+    /** Number of bits in each field. */
+    static final int BITS = 5;
+
+    /** Mask for a single field. */
+    private static final long MASK = (1L << BITS) - 1;
+
+    /** Largest number of rows and columns. */
+    static final int MAX_SIZE = Long.SIZE / BITS;
+
+    /** Largest exponent of a tile. */
+    static final int MAX_EXPONENT = Integer.SIZE - 2;
+
+    /** An empty board with SIZE rows and columns. */
+    LaneBoard(int size) {
+        if (size < Bitboard.SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                String.format("board size must be between %d and %d",
+                              Bitboard.SIZE, MAX_SIZE));
+        }
+        _size = size;
+        _rows = new long[size];
+    }
+
+    /** Return the number of rows (and of columns). */
+    int size() {
+        return _size;
+    }
+
+    /** Remove all tiles. */
+    void clear() {
+        for (int r = 0; r < _size; r += 1) {
+            _rows[r] = 0;
+        }
+    }
+
+    /** Return the exponent of the tile at row R and column C (0 if
+     *  empty). */
+    int get(int r, int c) {
+        return (int) (_rows[r] >>> (BITS * c)) & (int) MASK;
+    }
+
+    /** Set the square at row R and column C to hold a tile with exponent E
+     *  (0 for empty). */
+    void set(int r, int c, int e) {
+        int shift = BITS * c;
+        _rows[r] = (_rows[r] & ~(MASK << shift)) | ((long) e << shift);
+    }
+
+    /** Tilt the board toward SIDE.  Returns the score gained, or -1 if
+     *  the tilt does not change the board. */
+    int tilt(Side side) {
+        _gained = 0;
+        boolean changed = false;
+        switch (side) {
+        case WEST: case EAST:
+            for (int r = 0; r < _size; r += 1) {
+                long lane = _rows[r];
+                long next = side == Side.WEST ? compact(lane, 0, 1)
+                    : compact(lane, _size - 1, -1);
+                if (next != lane) {
+                    _rows[r] = next;
+                    changed = true;
+                }
+            }
+            break;
+        case NORTH: case SOUTH:
+            for (int c = 0; c < _size; c += 1) {
+                long lane = column(c);
+                long next = side == Side.NORTH ? compact(lane, 0, 1)
+                    : compact(lane, _size - 1, -1);
+                if (next != lane) {
+                    setColumn(c, next);
+                    changed = true;
+                }
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown direction");
+        }
+        return changed ? _gained : -1;
+    }
+
+    /** Return LANE, a line of _size fields, with its tiles slid and merged
+     *  toward field FROM, where the line is read starting at field FROM
+     *  and moving STEP (1 or -1) fields at a time.  Adds the score gained
+     *  to _gained. */
+    private long compact(long lane, int from, int step) {
+        if (lane == 0) {
+            return 0;
+        }
+        long result = 0;
+        int dest, last;
+        dest = from;
+        last = 0;
+        for (int k = 0, f = from; k < _size; k += 1, f += step) {
+            int e = (int) (lane >>> (BITS * f)) & (int) MASK;
+            if (e == 0) {
+                continue;
+            }
+            if (e == last && e < MAX_EXPONENT) {
+                result += 1L << (BITS * (dest - step));
+                _gained += 1 << (e + 1);
+                last = 0;
+            } else {
+                result |= (long) e << (BITS * dest);
+                last = e;
+                dest += step;
+            }
+        }
+        return result;
+    }
+
+    /** Return column C as a lane, with row 0 in field 0. */
+    private long column(int c) {
+        int shift = BITS * c;
+        long result = 0;
+        for (int r = 0; r < _size; r += 1) {
+            result |= ((_rows[r] >>> shift) & MASK) << (BITS * r);
+        }
+        return result;
+    }
+
+    /** Set column C to LANE, as returned by column. */
+    private void setColumn(int c, long lane) {
+        int shift = BITS * c;
+        for (int r = 0; r < _size; r += 1) {
+            _rows[r] = (_rows[r] & ~(MASK << shift))
+                | (((lane >>> (BITS * r)) & MASK) << shift);
+        }
+    }
+
+    /** Number of rows and of columns. */
+    private final int _size;
+    /** The rows of the board. */
+    private final long[] _rows;
+    /** Score gained by the current tilt. */
+    private int _gained;
+}
@@ -1,8 +1,19 @@
 package game2048;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.function.Supplier;
+
 import ucb.util.CommandArgs;
 
+import game2048.gui.BinaryLog;
 import game2048.gui.Game;
+import game2048.gui.GameInput;
+import game2048.gui.GameRandom;
+import game2048.gui.ScannerInput;
 import static game2048.Main.Side.*;
 
 /** The main class for the 2048 game.
@@ -10,93 +21,553 @@ import static game2048.Main.Side.*;
  */
 public class Main {
 
-    /** Size of the board: number of rows and of columns. */
+    /** Default size of the board: number of rows and of columns. */
     static final int SIZE = 4;
-    /** Number of squares on the board. */
-    static final int SQUARES = SIZE * SIZE;
 
     /** The value the user should reach to win the game. */
     static final int MAXTILEVALUE = 2048;
+    /** The exponent of MAXTILEVALUE. */
+    static final int MAX_EXPONENT = Bitboard.exponent(MAXTILEVALUE);
 
     /** Symbolic names for the four sides of a board. */
     static enum Side { NORTH, EAST, SOUTH, WEST };
 
-    /** The main program.  ARGS may contain the options --seed=NUM,
-     *  (random seed); --log (record moves and random tiles
-     *  selected.); --testing (take random tiles and moves from
-     *  standard input); and --no-display. */
+    /** Specification of the options of main, as for CommandArgs. */
+    static final String OPTIONS =
+        "--seed=(\\d+) --log --testing --no-display --endless "
+        + "--engine=(array|bitboard|lanes) "
+        + "--size=(\\d+) --simulate=(\\d+) "
+        + "--threads=(\\d+) --policy=(\\w+) "
+        + "--ai=(\\w+) --depth=(\\d+) --budget=(\\d+) "
+        + "--rollouts=(\\d+) "
+        + "--spawn=(rejection|indexed) --binlog=(.+) "
+        + "--save=(.+) --fast-forward "
+        + "--metrics=(.+) --table=(.+) "
+        + "--rng=(java|splitmix)";
+
+    /** The main program.  ARGS may contain the options --seed=NUM, (random
+     *  seed); --log (record moves and random tiles selected.); --binlog=FILE
+     *  (record them in binary form in FILE; see BinaryLog and Replay);
+     *  --testing (take random tiles and moves from standard input);
+     *  --no-display; --endless (play on past MAXTILEVALUE until no move is
+     *  possible); --size=N (play on an N x N board, N >= 4; default 4);
+     *  and --engine=NAME, where NAME is "array" (the default), "bitboard"
+     *  (tilt packed 4x4 boards by table lookup), or "lanes" (tilt boards of
+     *  up to LaneBoard.MAX_SIZE rows stored in packed lanes, in a single
+     *  pass over each row or column).  --spawn=indexed places each random
+     *  tile with a single draw from the PRNG rather than drawing until it
+     *  finds an empty square (--spawn=rejection, the default, which
+     *  reproduces the tiles of earlier runs with the same seed).
+     *  --rng=NAME chooses the PRNG (see GameRandom): "java" (the default,
+     *  which also reproduces earlier runs) or "splitmix" (faster).  With
+     *  --ai=NAME, moves come from the policy NAME ("random", "expectimax",
+     *  "montecarlo", or "table") rather than from the user (4x4 boards
+     *  only, and with --endless, --engine=bitboard only, since the
+     *  policies see the board in packed form and do not merge tiles of
+     *  Bitboard.MAX_EXPONENT); expectimax searches --depth=N moves
+     *  ahead, spending at most about --budget=MS milliseconds per move,
+     *  montecarlo plays out each move --rollouts=N times (default
+     *  MonteCarlo.DEFAULT_ROLLOUTS), or repeatedly for --budget=MS
+     *  milliseconds, and table plays the moves recorded in the value
+     *  table --table=FILE (see TableBuilder, which must have been built
+     *  with the same --endless setting), and those of expectimax
+     *  elsewhere.  Alternatively, --simulate=N plays N games without
+     *  display or input, using moves from --policy=NAME (default
+     *  "random") on --threads=K threads (default: one per processor), and
+     *  reports statistics about them;
+     *  --spawn, --rng, and --endless apply to these games as well.  When
+     *  the board is displayed or input comes from --testing, the keys
+     *  "Undo" and "Redo" step back and forward through the positions of
+     *  the current game, including the PRNG state, so that the same
+     *  random tiles follow.  With --save=FILE, the position is appended to
+     *  FILE (see PositionStore) whenever the user leaves a game with "New
+     *  Game" or "Quit", and a session resumes from the last position in
+     *  FILE, with its maximum score.  With --fast-forward, moves made
+     *  while more keys are waiting are displayed without animation.  With
+     *  --metrics=FILE, counters and latency histograms for the phases of
+     *  play, and statistics about the keys read from the display
+     *  (dropped and fast-forwarded keys, queue depth, and latency), are
+     *  written to FILE (see Metrics) about once a second and on
+     *  leaving. */
     public static void main(String... args) {
-        CommandArgs options =
-            new CommandArgs("--seed=(\\d+) --log --testing --no-display",
-                            args);
+        CommandArgs options = new CommandArgs(OPTIONS, args);
         if (!options.ok()) {
             System.err.println("Usage: java game2048.Main [ --seed=NUM ] "
-                               + "[ --log ] [ --testing ] [ --no-display ]");
+                               + "[ --log ] [ --testing ] [ --no-display ] "
+                               + "[ --endless ] [ --fast-forward ]\n"
+                               + "       [ --binlog=FILE ] [ --save=FILE ] "
+                               + "[ --metrics=FILE ] [ --size=N ]\n"
+                               + "       "
+                               + "[ --engine=array|bitboard|lanes ] "
+                               + "[ --spawn=rejection|indexed ] "
+                               + "[ --rng=java|splitmix ]\n"
+                               + "       [ --ai=NAME [ --depth=N ] "
+                               + "[ --rollouts=N ] [ --budget=MS ] "
+                               + "[ --table=FILE ] ]\n"
+                               + "       java game2048.Main --simulate=N "
+                               + "[ --threads=K ] [ --policy=NAME ] "
+                               + "[ --seed=NUM ] [ --spawn=... ] "
+                               + "[ --rng=... ] [ --endless ]");
             System.exit(1);
         }
 
+        if (options.contains("--simulate")) {
+            if (options.contains("--size")
+                && options.getInt("--size") != Bitboard.SIZE) {
+                System.err.println("--simulate supports only 4x4 boards");
+                System.exit(1);
+            }
+            simulate(options);
+            System.exit(0);
+        }
+
         Main game = new Main(options);
 
-        while (game.play()) {
-            /* No action */
+        try {
+            while (game.play()) {
+                /* No action */
+            }
+        } finally {
+            game.close();
         }
         System.exit(0);
     }
 
+    /** Play and report on the games requested by OPTIONS (as for main)
+     *  with a Simulator. */
+    static void simulate(CommandArgs options) {
+        int threads = !options.contains("--threads")
+            ? Runtime.getRuntime().availableProcessors()
+            : options.getInt("--threads");
+        long seed = !options.contains("--seed") ? 0 : options.getLong("--seed");
+        String policy = !options.contains("--policy") ? "random"
+            : options.getFirst("--policy");
+        Simulator sim;
+        try {
+            sim = new Simulator(options.getInt("--simulate"), threads,
+                                seed, rng(options), policy,
+                                policies(policy, options),
+                                "indexed".equals(options.getFirst("--spawn")),
+                                options.contains("--endless"));
+        } catch (IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        sim.run();
+        sim.report(System.out);
+    }
+
+    /** Return the name of the PRNG given by OPTIONS (as for main). */
+    static String rng(CommandArgs options) {
+        return !options.contains("--rng") ? GameRandom.JAVA
+            : options.getFirst("--rng");
+    }
+
+    /** Return a supplier of new Policies named NAME, configured by
+     *  OPTIONS (as for main).  Throws IllegalArgumentException if NAME is
+     *  not a known policy or OPTIONS do not configure it validly, without
+     *  creating one (which for some policies allocates large tables). */
+    static Supplier<Policy> policies(String name, CommandArgs options) {
+        int depth = !options.contains("--depth") ? Expectimax.DEFAULT_DEPTH
+            : options.getInt("--depth");
+        long budget = !options.contains("--budget") ? 0
+            : options.getLong("--budget");
+        int rollouts = !options.contains("--rollouts")
+            ? MonteCarlo.DEFAULT_ROLLOUTS : options.getInt("--rollouts");
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be >= 1");
+        }
+        if (rollouts < 1) {
+            throw new IllegalArgumentException("rollouts must be >= 1");
+        }
+        Supplier<Policy> result;
+        switch (name) {
+        case "random":
+            result = () -> new RandomPolicy();
+            break;
+        case "expectimax":
+            result = () -> new Expectimax(depth, budget);
+            break;
+        case "montecarlo":
+            result = () -> new MonteCarlo(rollouts, budget);
+            break;
+        case "table":
+            ValueTable table = openTable(options);
+            result = () -> new TablePolicy(table,
+                                           new Expectimax(depth, budget));
+            break;
+        default:
+            throw new IllegalArgumentException("unknown policy: " + name);
+        }
+        return result;
+    }
+
+    /** Return the value table given by the --table option in OPTIONS,
+     *  mapped for reading.  Throws IllegalArgumentException if there is
+     *  none, it cannot be read, or it was built for endless games and
+     *  OPTIONS do not select --endless or vice versa (since its values
+     *  assume the rules it was built for). */
+    private static ValueTable openTable(CommandArgs options) {
+        if (!options.contains("--table")) {
+            throw new IllegalArgumentException("policy table needs "
+                                               + "--table=FILE");
+        }
+        String name = options.getFirst("--table");
+        try {
+            ValueTable table = new ValueTable(Paths.get(name));
+            if (table.endless() == options.contains("--endless")) {
+                return table;
+            }
+            table.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(
+                String.format("Cannot read value table %s: %s",
+                              name, excp.getMessage()));
+        }
+        throw new IllegalArgumentException(
+            String.format("Value table %s was built %s --endless",
+                          name, options.contains("--endless")
+                          ? "without" : "with"));
+    }
+
     /** A new Main object using OPTIONS as options (as for main). */
     Main(CommandArgs options) {
+        this(options, options.contains("--testing")
+             ? new ScannerInput(System.in) : null, System.out);
+    }
+
+    /** A new Main object using OPTIONS as options (as for main), taking
+     *  keys and random tiles from INPUT if OPTIONS contain --testing, and
+     *  writing the log and testing output to OUTPUT. */
+    Main(CommandArgs options, GameInput input, OutputStream output) {
         boolean log = options.contains("--log"),
             display = !options.contains("--no-display");
         long seed = !options.contains("--seed") ? 0 : options.getLong("--seed");
         _testing = options.contains("--testing");
-        _game = new Game("2048", SIZE, seed, log, display, _testing);
+        _endless = options.contains("--endless");
+        _size = !options.contains("--size") ? SIZE : options.getInt("--size");
+        _squares = _size * _size;
+        String engine = options.getFirst("--engine");
+        _packed = "bitboard".equals(engine);
+        String optionError = null;
+        if (_size < SIZE) {
+            optionError = "board size must be at least " + SIZE;
+        } else if ("lanes".equals(engine) && _size > LaneBoard.MAX_SIZE) {
+            optionError = "--engine=lanes supports at most "
+                + LaneBoard.MAX_SIZE + " rows";
+        } else if (_size != Bitboard.SIZE
+                   && (_packed || options.contains("--ai"))) {
+            optionError = "--engine=bitboard and --ai support only 4x4 boards";
+        } else if (options.contains("--ai") && _endless && !_packed) {
+            optionError = "--ai with --endless needs --engine=bitboard";
+        }
+        if (optionError != null) {
+            System.err.println(optionError);
+            System.exit(1);
+        }
+        if ("lanes".equals(engine)) {
+            _lanes = new LaneBoard(_size);
+        }
+        _mergeLimit = _packed ? Bitboard.MAX_EXPONENT
+            : _lanes != null ? LaneBoard.MAX_EXPONENT : Integer.MAX_VALUE;
+        _board = new byte[_size][_size];
+        _tilted = new byte[_size][_size];
+        _line = new int[_size];
+        _free = new int[_squares];
+        _freeIndex = new int[_squares];
+        _spawnIndexed = "indexed".equals(options.getFirst("--spawn"));
+        _display = display;
+        if (display || _testing) {
+            _history = new History(_size, History.DEFAULT_CAPACITY);
+        }
+        if (options.contains("--ai")) {
+            try {
+                _player = policies(options.getFirst("--ai"), options).get();
+            } catch (IllegalArgumentException excp) {
+                System.err.println(excp.getMessage());
+                System.exit(1);
+            }
+            _playerRandom =
+                GameRandom.create(rng(options), Simulator.gameSeed(seed, -1));
+        }
+        _game = new Game("2048", _size,
+                         GameRandom.create(rng(options), seed), log,
+                         display, _testing ? input : null, output);
+        _game.setFastForward(options.contains("--fast-forward"));
+        if (options.contains("--metrics")) {
+            _metrics = new Metrics(Paths.get(options.getFirst("--metrics")),
+                                   Metrics.DEFAULT_INTERVAL);
+            try {
+                dumpMetrics();
+            } catch (UncheckedIOException excp) {
+                System.err.printf("Cannot write metrics to %s: %s%n",
+                                  options.getFirst("--metrics"),
+                                  excp.getCause().getMessage());
+                System.exit(1);
+            }
+        }
+        if (options.contains("--binlog")) {
+            try {
+                _game.setBinaryLog(new BinaryLog.Writer(
+                    Paths.get(options.getFirst("--binlog")), _size,
+                    _testing ? 0 : seed,
+                    (_spawnIndexed ? BinaryLog.INDEXED_SPAWN : 0)
+                    | (_endless ? BinaryLog.ENDLESS : 0)
+                    | (GameRandom.SPLITMIX.equals(rng(options))
+                       ? BinaryLog.SPLITMIX : 0)));
+            } catch (IOException excp) {
+                System.err.printf("Cannot write binary log: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        if (options.contains("--save")) {
+            try {
+                _store = new PositionStore(
+                    Paths.get(options.getFirst("--save")), _size);
+                if (_store.size() > 0) {
+                    _store.read(_store.size() - 1);
+                    _maxScore = _store.maxScore();
+                    _resume = true;
+                }
+            } catch (IOException excp) {
+                System.err.printf("Cannot use saved games: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
     }
 
-    /** Reset the score for the current game to 0 and clear the board. */
+    /** Finish all output, including logs. */
+    void close() {
+        if (_metrics != null) {
+            dumpMetrics();
+        }
+        _game.close();
+        if (_store != null) {
+            try {
+                _store.close();
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+        }
+    }
+
+    /** Return the score of the current game. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the maximum final score over all games in this session. */
+    int maxScore() {
+        return _maxScore;
+    }
+
+    /** Return the number of moves made in the current game. */
+    int moves() {
+        return _moves;
+    }
+
+    /** Reset the score for the current game to 0 and clear the board
+     *  and the undo history. */
     void clear() {
         _score = 0;
+        _moves = 0;
+        clearBoard();
+        _game.setScore(_score, _maxScore);
+        if (_history != null) {
+            _history.clear();
+        }
+    }
+
+    /** Remove all tiles from the board. */
+    private void clearBoard() {
         _count = 0;
         _game.clear();
-        _game.setScore(_score, _maxScore);
-        for (int r = 0; r < SIZE; r += 1) {
-            for (int c = 0; c < SIZE; c += 1) {
+        for (int r = 0; r < _size; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
                 _board[r][c] = 0;
             }
         }
+        for (int k = 0; k < _squares; k += 1) {
+            _free[k] = _freeIndex[k] = k;
+        }
+        if (_lanes != null) {
+            _lanes.clear();
+        }
+        _freeCount = _squares;
+        _pairs = 0;
+        _bits = 0;
+        _won = false;
+    }
+
+    /** Set the square at row R and column C to hold a tile with exponent E
+     *  (0 for empty), keeping the list of free squares, _pairs (or, for
+     *  --engine=bitboard, _bits), and _won up to date.  Does not change
+     *  _count. */
+    private void put(int r, int c, int e) {
+        int old = _board[r][c];
+        if (old == e) {
+            return;
+        }
+        if (_packed) {
+            int shift = 4 * (Bitboard.SIZE * r + c);
+            _bits = (_bits & ~(0xFL << shift)) | ((long) e << shift);
+        } else {
+            _pairs += equalNeighbors(r, c, e) - equalNeighbors(r, c, old);
+        }
+        if (e >= MAX_EXPONENT && !_endless) {
+            _won = true;
+        }
+        int k = r * _size + c;
+        if (e == 0 && old != 0) {
+            _freeIndex[k] = _freeCount;
+            _free[_freeCount] = k;
+            _freeCount += 1;
+        } else if (e != 0 && old == 0) {
+            _freeCount -= 1;
+            int last = _free[_freeCount];
+            _free[_freeIndex[k]] = last;
+            _freeIndex[last] = _freeIndex[k];
+        }
+        _board[r][c] = (byte) e;
+        if (_lanes != null) {
+            _lanes.set(r, c, e);
+        }
+    }
+
+    /** Reset the score for the current game to 0 and set the board to
+     *  BOARD, where BOARD[r][c] is the tile value at row r and column c,
+     *  or 0 if there is no tile there. */
+    void setBoard(int[][] board) {
+        clear();
+        for (int r = 0; r < _size; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
+                if (board[r][c] != 0) {
+                    put(r, c, Bitboard.exponent(board[r][c]));
+                    _count += 1;
+                    _game.addTile(board[r][c], r, c);
+                }
+            }
+        }
+    }
+
+    /** Return the current position. */
+    GameState snapshot() {
+        byte[] board = new byte[_squares];
+        for (int r = 0; r < _size; r += 1) {
+            System.arraycopy(_board[r], 0, board, r * _size, _size);
+        }
+        return new GameState(_size, board, _score, _game.randomState());
+    }
+
+    /** Return to position STATE, which must be for a board of the current
+     *  size, redisplaying its tiles.  The maximum score and the undo
+     *  history are unchanged. */
+    void restore(GameState state) {
+        if (state.size() != _size) {
+            throw new IllegalArgumentException("wrong board size");
+        }
+        clearBoard();
+        for (int r = 0; r < _size; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
+                int e = state.get(r, c);
+                if (e != 0) {
+                    put(r, c, e);
+                    _count += 1;
+                    _game.addTile(Bitboard.value(e), r, c);
+                }
+            }
+        }
+        _score = state.score();
+        _game.setScore(_score, _maxScore);
+        _game.setRandomState(state.random());
+    }
+
+    /** Return the number of squares next to row R and column C that hold
+     *  tiles with exponent E, or 0 if E is 0 or at least _mergeLimit (so
+     *  that such tiles cannot merge). */
+    private int equalNeighbors(int r, int c, int e) {
+        if (e == 0 || e >= _mergeLimit) {
+            return 0;
+        }
+        int n = 0;
+        if (r > 0 && _board[r - 1][c] == e) {
+            n += 1;
+        }
+        if (r + 1 < _size && _board[r + 1][c] == e) {
+            n += 1;
+        }
+        if (c > 0 && _board[r][c - 1] == e) {
+            n += 1;
+        }
+        if (c + 1 < _size && _board[r][c + 1] == e) {
+            n += 1;
+        }
+        return n;
     }
 
     /** Play one game of 2048, updating the maximum score. Return true
      *  iff play should continue with another game, or false to exit. */
     boolean play() {
         clear();
-        setRandomPiece();
+        if (_metrics != null) {
+            _metrics.add(Metrics.GAMES, 1);
+        }
+        boolean spawn = !_resume;
+        if (_resume) {
+            restore(_store.state());
+            _moves = _store.moves();
+            _resume = false;
+        } else {
+            setRandomPiece();
+        }
 
         while (true) {
-            if (!gameOver()) {
+            if (spawn && !gameOver()) {
                 setRandomPiece();
                 _game.setScore(_score, _maxScore);
             }
+            spawn = true;
+            if (_history != null) {
+                _history.record(_board, _score, _game.randomState());
+            }
             if (gameOver()) {
-                if (_score > _maxScore) {
-                    _maxScore = _score;
-                }
-                _game.setScore(_score, _maxScore);
-                _game.endGame();
+                endGame();
+            }
+            if (_metrics != null && _metrics.due()) {
+                dumpMetrics();
             }
 
         GetMove:
             while (true) {
-                String key = _game.readKey();
+                String key = readKey();
 
                 switch (key) {
                 case "Up": case "Down": case "Left": case "Right":
                     if (!gameOver() && tiltBoard(keyToSide(key))) {
+                        _moves += 1;
                         break GetMove;
                     }
                     break;
+                case "Undo": case "Redo":
+                    GameState state = _history == null ? null
+                        : key.equals("Undo") ? _history.undo()
+                        : _history.redo();
+                    if (state != null) {
+                        restore(state);
+                        _moves += key.equals("Undo") ? -1 : 1;
+                        if (gameOver()) {
+                            endGame();
+                        }
+                    }
+                    break;
                 case "New Game":
+                    save();
                     return true;
                 case "Quit":
+                    save();
                     return false;
                 default:
                     break;
@@ -105,27 +576,106 @@ public class Main {
         }
     }
 
-    /** Return true iff the current game is over (no more moves
-     *  possible). */
+    /** Append the current position to the --save file, if there is
+     *  one. */
+    private void save() {
+        if (_store != null) {
+            try {
+                _store.append(snapshot(), _maxScore, _moves);
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+        }
+    }
+
+    /** Write out _metrics, including the statistics of the keys read from
+     *  the display. */
+    private void dumpMetrics() {
+        _metrics.set(Metrics.KEYS, _game.keysRead());
+        _metrics.set(Metrics.DROPPED_KEYS, _game.droppedKeys());
+        _metrics.set(Metrics.COALESCED_KEYS, _game.coalescedKeys());
+        _metrics.set(Metrics.KEY_QUEUE_DEPTH, _game.keyQueueDepth());
+        _metrics.set(Metrics.MAX_KEY_QUEUE_DEPTH, _game.maxKeyQueueDepth());
+        _metrics.set(Metrics.KEY_LATENCY, _game.keyLatency());
+        _metrics.set(Metrics.MAX_KEY_LATENCY, _game.maxKeyLatency());
+        try {
+            _metrics.dump();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Report the end of the current game, updating the maximum
+     *  score. */
+    private void endGame() {
+        if (_score > _maxScore) {
+            _maxScore = _score;
+        }
+        _game.setScore(_score, _maxScore);
+        _game.endGame();
+        if (_player != null && _player.stats() != null) {
+            System.err.println(_player.stats());
+        }
+    }
+
+    /** Return the next key: a move chosen by _player, if there is one and
+     *  the game is not over, and otherwise input from _game.  Without a
+     *  display or test input, the end of a game played by _player is
+     *  treated as "Quit". */
+    String readKey() {
+        if (_player == null) {
+            return _game.readKey();
+        } else if (!gameOver()) {
+            Side side =
+                _player.move(_packed ? _bits
+                             : Bitboard.packExponents(_board),
+                             _playerRandom);
+            return _game.playKey(sideToKey(side));
+        } else if (_display || _testing) {
+            return _game.readKey();
+        } else {
+            return "Quit";
+        }
+    }
+
+    /** Return true iff the current game is over (no more moves possible,
+     *  or, unless _endless, a tile of MAXTILEVALUE has been reached). */
     boolean gameOver() {
+        long start = _metrics == null ? 0 : System.nanoTime();
+        boolean over = _won
+            || (_packed ? !Bitboard.canMove(_bits)
+                : _count == _squares && _pairs == 0);
+        if (_metrics != null) {
+            _metrics.record(Metrics.GAME_OVER, start);
+        }
+        return over;
+    }
 
-        for (int r = 0; r < SIZE; r++) {
-            for (int c = 0; c < SIZE; c++) {
-                if (_board[r][c] == MAXTILEVALUE) {
+    /** Return true iff the current game is over, as for gameOver, by
+     *  examining every square of the board rather than using the
+     *  information maintained by put.  Equal tiles with exponents of at
+     *  least _mergeLimit do not count as a possible move. */
+    boolean gameOverScan() {
+        for (int r = 0; r < _size; r++) {
+            for (int c = 0; c < _size; c++) {
+                if (_board[r][c] == MAX_EXPONENT && !_endless) {
                     return true;
                 }
             }
         }
 
-        if (_count == SQUARES) {
-            for (int r = 0; r < SIZE; r++) {
-                for (int c = 0; c < SIZE; c++) {
+        if (_count == _squares) {
+            for (int r = 0; r < _size; r++) {
+                for (int c = 0; c < _size; c++) {
+                    if (_board[r][c] >= _mergeLimit) {
+                        continue;
+                    }
                     if (c - 1 >= 0) {
                         if (_board[r][c] == _board[r][c - 1]) {
                             return false;
                         }
                     }
-                    if (c + 1 < SIZE) {
+                    if (c + 1 < _size) {
                         if (_board[r][c] == _board[r][c + 1]) {
                             return false;
                         }
@@ -135,7 +685,7 @@ public class Main {
                             return false;
                         }
                     }
-                    if (r + 1 < SIZE) {
+                    if (r + 1 < _size) {
                         if (_board[r][c] == _board[r + 1][c]) {
                             return false;
                         }
@@ -150,32 +700,61 @@ public class Main {
     /** Add a tile to a random, empty position, choosing a value (2 or
      *  4) at random.  Has no effect if the board is currently full. */
     void setRandomPiece() {
-        if (_count == SQUARES) {
+        if (_count == _squares) {
             return;
-        } else {
-            while (true) {
-                int[] randomTile = _game.getRandomTile();
-                if (_board[randomTile[1]][randomTile[2]] == 0) {
-                    _count++;
-                    _board[randomTile[1]][randomTile[2]] = randomTile[0];
-                    _game.addTile(randomTile[0], randomTile[1], randomTile[2]);
-                    break;
-                }
+        }
+        long start = _metrics == null ? 0 : System.nanoTime();
+        int draws;
+        draws = 0;
+        while (true) {
+            int[] randomTile = _spawnIndexed
+                ? _game.getRandomTile(_free, _freeCount)
+                : _game.getRandomTile();
+            draws += 1;
+            if (_board[randomTile[1]][randomTile[2]] == 0) {
+                _count++;
+                put(randomTile[1], randomTile[2],
+                    Bitboard.exponent(randomTile[0]));
+                _game.addTile(randomTile[0], randomTile[1], randomTile[2]);
+                break;
             }
         }
+        if (_metrics != null) {
+            _metrics.record(Metrics.SPAWN, start);
+            _metrics.add(Metrics.SPAWNS, 1);
+            _metrics.add(Metrics.SPAWN_RETRIES, draws - 1);
+        }
     }
 
     /** Perform the result of tilting the board toward SIDE.
      *  Returns true iff the tilt changes the board. **/
     boolean tiltBoard(Side side) {
+        long start = _metrics == null ? 0 : System.nanoTime();
+        int count = _count;
+        boolean changed = _packed ? tiltPacked(side)
+            : _lanes != null ? tiltLanes(side)
+            : tiltArray(side);
+        if (_metrics != null) {
+            _metrics.record(Metrics.TILT, start);
+            if (changed) {
+                _metrics.add(Metrics.MOVES, 1);
+                _metrics.add(Metrics.MERGES, count - _count);
+            }
+        }
+        return changed;
+    }
+
+    /** Perform the result of tilting the board toward SIDE, tile by tile
+     *  in _board.  Returns true iff the tilt changes the board. */
+    private boolean tiltArray(Side side) {
         /* As a suggestion (see the project text), you might try copying
          * the board to a local array, turning it so that edge SIDE faces
          * north.  That way, you can re-use the same logic for all
          * directions.  (As usual, you don't have to). */
-        int[][] board = new int[SIZE][SIZE];
+        byte[][] board = _tilted;
 
-        for (int r = 0; r < SIZE; r += 1) {
-            for (int c = 0; c < SIZE; c += 1) {
+        for (int r = 0; r < _size; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
                 board[r][c] =
                     _board[tiltRow(side, r, c)][tiltCol(side, r, c)];
             }
@@ -184,26 +763,154 @@ public class Main {
         boolean movementchecker;
         movementchecker = isTilted(board, side);
 
-        for (int r = 0; r < SIZE; r += 1) {
-            for (int c = 0; c < SIZE; c += 1) {
-                _board[tiltRow(side, r, c)][tiltCol(side, r, c)]
-                    = board[r][c];
+        for (int r = 0; r < _size; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
+                put(tiltRow(side, r, c), tiltCol(side, r, c), board[r][c]);
             }
         }
 
         _game.setScore(_score, _maxScore);
-        _game.displayMoves();
+        displayMoves();
         return movementchecker;
     }
 
+    /** Have _game display the pending moves, recording the time taken in
+     *  _metrics. */
+    private void displayMoves() {
+        long start = _metrics == null ? 0 : System.nanoTime();
+        _game.displayMoves();
+        if (_metrics != null) {
+            _metrics.record(Metrics.DISPLAY, start);
+        }
+    }
+
+    /** Perform the result of tilting the board toward SIDE, computing the
+     *  new board and score from _bits with the row tables in Bitboard,
+     *  reporting the individual moves and merges recorded in those tables
+     *  to _game, and then updating just the squares of _board that
+     *  changed.  Returns true iff the tilt changes the board. */
+    private boolean tiltPacked(Side side) {
+        long board = _bits;
+        long tilted = Bitboard.tilt(board, side);
+        boolean changed = tilted != board;
+
+        if (changed) {
+            for (int c = 0; c < Bitboard.SIZE; c += 1) {
+                replayEvents(board, side, c);
+            }
+            _score += Bitboard.score(board, side);
+            _count = _squares - Bitboard.emptyCount(tilted);
+            for (long diff = board ^ tilted; diff != 0; ) {
+                int k = Long.numberOfTrailingZeros(diff) >>> 2;
+                diff &= ~(0xFL << (4 * k));
+                put(k / Bitboard.SIZE, k % Bitboard.SIZE,
+                    (int) (tilted >>> (4 * k)) & 0xF);
+            }
+        }
+
+        _game.setScore(_score, _maxScore);
+        displayMoves();
+        return changed;
+    }
+
+    /** Perform the result of tilting the board toward SIDE, computing the
+     *  new board and score with _lanes and then reporting the individual
+     *  moves and merges to _game.  Returns true iff the tilt changes the
+     *  board. */
+    private boolean tiltLanes(Side side) {
+        int gained = _lanes.tilt(side);
+        boolean changed = gained >= 0;
+
+        if (changed) {
+            for (int c = 0; c < _size; c += 1) {
+                replayLine(side, c);
+            }
+            _score += gained;
+            for (int r = 0; r < _size; r += 1) {
+                for (int c = 0; c < _size; c += 1) {
+                    put(r, c, _lanes.get(r, c));
+                }
+            }
+            _count = _squares - _freeCount;
+        }
+
+        _game.setScore(_score, _maxScore);
+        displayMoves();
+        return changed;
+    }
+
+    /** Report to _game the moves and merges that tilting column C of
+     *  packed board BOARD, turned so that SIDE is north, toward row 0
+     *  performs, as for replayLine, but using the events recorded in
+     *  Bitboard's tables. */
+    private void replayEvents(long board, Side side, int c) {
+        int line = 0;
+        for (int r = 0; r < Bitboard.SIZE; r += 1) {
+            line |= Bitboard.getExponent(board, tiltRow(side, r, c),
+                                         tiltCol(side, r, c)) << (4 * r);
+        }
+        int events = Bitboard.lineEvents(line);
+        for (int r = 0; r < Bitboard.SIZE; r += 1) {
+            int e = (line >> (4 * r)) & 0xF;
+            if (e == 0) {
+                continue;
+            }
+            int value = Bitboard.value(e);
+            int event = events >>> (Bitboard.EVENT_BITS * r);
+            int dest = event & Bitboard.EVENT_DEST;
+            if ((event & Bitboard.EVENT_MERGE) != 0) {
+                _game.mergeTile(value, 2 * value,
+                                tiltRow(side, r, c), tiltCol(side, r, c),
+                                tiltRow(side, dest, c),
+                                tiltCol(side, dest, c));
+            } else {
+                _game.moveTile(value, tiltRow(side, r, c),
+                               tiltCol(side, r, c), tiltRow(side, dest, c),
+                               tiltCol(side, dest, c));
+            }
+        }
+    }
+
+    /** Report to _game the moves and merges that tilting column C of the
+     *  board, turned so that SIDE is north, toward row 0 performs, in the
+     *  same order as isTilted, except that tiles with exponent _mergeLimit
+     *  do not merge.  Does not modify _board. */
+    private void replayLine(Side side, int c) {
+        int dest, last;
+        dest = 0;
+        last = -1;
+        for (int r = 0; r < _size; r += 1) {
+            int e = _board[tiltRow(side, r, c)][tiltCol(side, r, c)];
+            if (e == 0) {
+                continue;
+            }
+            int value = Bitboard.value(e);
+            if (last != -1 && _line[last] == e && e < _mergeLimit) {
+                _game.mergeTile(value, 2 * value,
+                                tiltRow(side, r, c), tiltCol(side, r, c),
+                                tiltRow(side, last, c),
+                                tiltCol(side, last, c));
+                _line[last] = e + 1;
+                last = -1;
+            } else {
+                _game.moveTile(value, tiltRow(side, r, c),
+                               tiltCol(side, r, c), tiltRow(side, dest, c),
+                               tiltCol(side, dest, c));
+                _line[dest] = e;
+                last = dest;
+                dest += 1;
+            }
+        }
+    }
+
      /** Provides the first 0 position before the given tile.
      *   Takes 2 dimensional array TABLE and the positions of
      *   of the currect tile by providing the ROW and COL
      *   It returns -1 if there is no any empty positions before
      *   the current tile. **/
-    int emptyBeforeTile(int[][] table, int row, int col) {
+    int emptyBeforeTile(byte[][] table, int row, int col) {
         int zerovalue = -1;
-        for (int r = 0; r < SIZE; r++) {
+        for (int r = 0; r < _size; r++) {
             if (table[r][col] == 0 && r < row) {
                 zerovalue = r;
                 break;
@@ -217,9 +924,9 @@ public class Main {
      *   of the currect tile by providing the ROW and COL.
      *   Returns -1 if there is no any nonzero position before
      *   the current tile. **/
-    int occupiedTileAfter(int[][] table, int row, int col) {
+    int occupiedTileAfter(byte[][] table, int row, int col) {
         int nonzervalue = -1;
-        for (int r = 0; r < SIZE; r++) {
+        for (int r = 0; r < _size; r++) {
             if (table[r][col] != 0 && r > row) {
                 nonzervalue = r;
                 break;
@@ -228,27 +935,28 @@ public class Main {
         return nonzervalue;
     }
 
-    /** Takes the given BOARD and the current SIDE and
+    /** Takes the given BOARD of tile exponents and the current SIDE and
      *  makes movements and merges if required and returns
      *  true iff the the board is changed after movement or
      *  merge and false, it it has not changed. */
-    boolean isTilted(int[][] board, Side side) {
+    boolean isTilted(byte[][] board, Side side) {
         boolean movementCheck = false;
 
-        for (int c = 0; c < SIZE; c++) {
-            for (int r = 0; r < SIZE; r++) {
+        for (int c = 0; c < _size; c++) {
+            for (int r = 0; r < _size; r++) {
                 if (board[r][c] != 0) {
                     int zerobeforetile = emptyBeforeTile(board, r, c);
                     int nonzeroaftertile = occupiedTileAfter(board, r, c);
                     if (zerobeforetile == -1) {
                         if (nonzeroaftertile == -1) {
-                            _game.moveTile(board[r][c], tiltRow(side, r, c),
-                                tiltCol(side, r, c), tiltRow(side, r, c),
-                                tiltCol(side, r, c));
+                            _game.moveTile(Bitboard.value(board[r][c]),
+                                tiltRow(side, r, c), tiltCol(side, r, c),
+                                tiltRow(side, r, c), tiltCol(side, r, c));
                         } else {
                             if (board[r][c] == board[nonzeroaftertile][c]) {
-                                int value = 2 * board[r][c];
-                                _game.mergeTile(board[nonzeroaftertile][c],
+                                int e = board[r][c] + 1;
+                                int value = Bitboard.value(e);
+                                _game.mergeTile(value / 2,
                                     value, tiltRow(side, nonzeroaftertile, c),
                                     tiltCol(side, nonzeroaftertile, c),
                                     tiltRow(side, r, c), tiltCol(side, r, c));
@@ -256,13 +964,13 @@ public class Main {
                                 _game.setScore(_score, _maxScore);
                                 movementCheck = true;
                                 _count--;
-                                board[r][c] = value;
+                                board[r][c] = (byte) e;
                                 board[nonzeroaftertile][c] = 0;
                             }
                         }
                     } else {
-                        _game.moveTile(board[r][c], tiltRow(side, r, c),
-                            tiltCol(side, r, c),
+                        _game.moveTile(Bitboard.value(board[r][c]),
+                            tiltRow(side, r, c), tiltCol(side, r, c),
                             tiltRow(side, zerobeforetile, c),
                             tiltCol(side, zerobeforetile, c));
                         movementCheck = true;
@@ -271,9 +979,9 @@ public class Main {
                         if (nonzeroaftertile != -1) {
                             if (board[zerobeforetile][c]
                                 == board[nonzeroaftertile][c]) {
-                                int value = 2 * board[zerobeforetile][c];
-                                _game.mergeTile(board[nonzeroaftertile][c],
-                                    value,
+                                int e = board[zerobeforetile][c] + 1;
+                                int value = Bitboard.value(e);
+                                _game.mergeTile(value / 2, value,
                                     tiltRow(side, nonzeroaftertile, c),
                                     tiltCol(side, nonzeroaftertile, c),
                                     tiltRow(side, zerobeforetile, c),
@@ -282,7 +990,7 @@ public class Main {
                                 _game.setScore(_score, _maxScore);
                                 movementCheck = true;
                                 _count--;
-                                board[zerobeforetile][c] = value;
+                                board[zerobeforetile][c] = (byte) e;
                                 board[nonzeroaftertile][c] = 0;
                             }
                         }
@@ -298,8 +1006,8 @@ public class Main {
      *  specified by the definitions of NORTH, EAST, etc.).  So, if SIDE
      *  is NORTH, then tiltRow simply returns R (since in that case, the
      *  board is not turned).  If SIDE is WEST, then column 0 of the tilted
-     *  board corresponds to row SIZE - 1 of the untilted board, and
-     *  tiltRow returns SIZE - 1 - C. */
+     *  board corresponds to row _size - 1 of the untilted board, and
+     *  tiltRow returns _size - 1 - C. */
     int tiltRow(Side side, int r, int c) {
         switch (side) {
         case NORTH:
@@ -307,9 +1015,9 @@ public class Main {
         case EAST:
             return c;
         case SOUTH:
-            return SIZE - 1 - r;
+            return _size - 1 - r;
         case WEST:
-            return SIZE - 1 - c;
+            return _size - 1 - c;
         default:
             throw new IllegalArgumentException("Unknown direction");
         }
@@ -327,9 +1035,9 @@ public class Main {
         case NORTH:
             return c;
         case EAST:
-            return SIZE - 1 - r;
+            return _size - 1 - r;
         case SOUTH:
-            return SIZE - 1 - c;
+            return _size - 1 - c;
         case WEST:
             return r;
         default:
@@ -354,10 +1062,83 @@ public class Main {
         }
     }
 
-    /** Represents the board: _board[r][c] is the tile value at row R,
-     *  column C, or 0 if there is no tile there. */
-    private final int[][] _board = new int[SIZE][SIZE];
+    /** Return the key ("Up", "Down", "Left", or "Right") that tilts the
+     *  board toward SIDE. */
+    String sideToKey(Side side) {
+        switch (side) {
+        case NORTH:
+            return "Up";
+        case SOUTH:
+            return "Down";
+        case WEST:
+            return "Left";
+        case EAST:
+            return "Right";
+        default:
+            throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Number of rows and of columns of the board. */
+    private final int _size;
+    /** Number of squares on the board. */
+    private final int _squares;
+
+    /** Represents the board: _board[r][c] is the exponent (base-2
+     *  logarithm) of the tile value at row R, column C, or 0 if there is no
+     *  tile there. */
+    private final byte[][] _board;
+
+    /** Scratch space for tiltArray: the board turned so that the side
+     *  being tilted toward is north. */
+    private final byte[][] _tilted;
+
+    /** Scratch space for replayLine: the exponents already placed in the
+     *  current line. */
+    private final int[] _line;
+
+    /** The numbers (row * _size + column) of the empty squares are
+     *  _free[0 .. _freeCount - 1], in no particular order. */
+    private final int[] _free;
+    /** _freeIndex[k] is the index in _free of empty square number k. */
+    private final int[] _freeIndex;
+    /** Number of empty squares. */
+    private int _freeCount;
+    /** Number of pairs of adjacent squares holding equal tiles that can
+     *  merge (not maintained for --engine=bitboard). */
+    private int _pairs;
+    /** True iff a tile of value MAXTILEVALUE or more has been placed on
+     *  the board in the current game. */
+    private boolean _won;
+    /** True iff --endless selected: reaching MAXTILEVALUE does not end
+     *  the game. */
+    private boolean _endless;
+    /** Exponent of tiles that the engine does not merge. */
+    private int _mergeLimit;
 
+    /** True iff --spawn=indexed selected. */
+    private boolean _spawnIndexed;
+    /** True iff --engine=bitboard selected. */
+    private boolean _packed;
+    /** For --engine=bitboard, the board in packed form: the state that
+     *  tilts and gameOver use, of which _board is a copy kept up to date
+     *  square by square. */
+    private long _bits;
+    /** The board in the form used by --engine=lanes, which keeps it up to
+     *  date with _board, or null for other engines. */
+    private LaneBoard _lanes;
+    /** True iff the board is displayed. */
+    private boolean _display;
+    /** Positions of the current game, for the "Undo" and "Redo" keys, or
+     *  null if there is no source of those keys. */
+    private History _history;
+    /** The automated player selected by --ai, or null if moves come from
+     *  _game. */
+    private Policy _player;
+    /** Source of random choices for _player: a stream distinct from that
+     *  of the tiles (seeded with a hash of --seed, or randomly without
+     *  one), so that the player's choices are not correlated with them. */
+    private Random _playerRandom;
     /** True iff --testing option selected. */
     private boolean _testing;
     /** THe current input source and output sink. */
@@ -367,4 +1148,13 @@ public class Main {
     private int _score, _maxScore;
     /** Number of tiles on the board. */
     private int _count;
+    /** Number of moves made in the current game. */
+    private int _moves;
+    /** The file selected by --save, or null. */
+    private PositionStore _store;
+    /** Counters and histograms for --metrics, or null. */
+    private Metrics _metrics;
+    /** True iff the next game is to resume from the current entry of
+     *  _store rather than start afresh. */
+    private boolean _resume;
 }
@@ -0,0 +1,177 @@
+package game2048;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/** Counters and latency histograms for the phases of play in Main, as
+ *  requested by --metrics=FILE.  Each dump replaces FILE with the totals
+ *  so far: as CSV if FILE's name ends in ".csv", and otherwise as JSON.
+ *  A dump writes a temporary file in the same directory and renames it,
+ *  so that a reader never sees a partial dump.  Main keeps no Metrics
+ *  when --metrics is absent, so that the cost of the instrumentation is
+ *  then a test for null at each instrumented point.
+ *  @author Rafayel Mkrtchyan
+ */
+class Metrics {
+
+    /** Phases whose durations are recorded: Main.tiltBoard (including the
+     *  display of its moves), Main.setRandomPiece, Main.gameOver, and
+     *  Game.displayMoves. */
+    static final int TILT = 0, SPAWN = 1, GAME_OVER = 2, DISPLAY = 3;
+
+    /** Names of the phases in dumps. */
+    private static final String[] PHASES = {
+        "tilt", "spawn", "gameOver", "display"
+    };
+
+    /** Counters: moves that changed the board, merges, random tiles
+     *  placed, squares drawn for them that were already occupied, games
+     *  started, and, for the keys read from the display (see Game), the
+     *  number read, dropped, and coalesced, the total and largest number
+     *  waiting when each was read, and the total and largest latency
+     *  (nanoseconds) from a key press to the display of its move. */
+    static final int MOVES = 0, MERGES = 1, SPAWNS = 2, SPAWN_RETRIES = 3,
+        GAMES = 4, KEYS = 5, DROPPED_KEYS = 6, COALESCED_KEYS = 7,
+        KEY_QUEUE_DEPTH = 8, MAX_KEY_QUEUE_DEPTH = 9, KEY_LATENCY = 10,
+        MAX_KEY_LATENCY = 11;
+
+    /** Names of the counters in dumps. */
+    private static final String[] COUNTERS = {
+        "moves", "merges", "spawns", "spawnRetries", "games", "keys",
+        "droppedKeys", "coalescedKeys", "keyQueueDepth", "maxKeyQueueDepth",
+        "keyLatencyNanos", "maxKeyLatencyNanos"
+    };
+
+    /** Quantiles reported for each phase. */
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    /** Names of QUANTILES. */
+    private static final String[] QUANTILE_NAMES = {
+        "p50", "p90", "p99", "p999"
+    };
+
+    /** Default time between dumps (milliseconds). */
+    static final long DEFAULT_INTERVAL = 1000;
+
+    /** Metrics dumped to FILE at intervals of about INTERVAL
+     *  milliseconds. */
+    Metrics(Path file, long interval) {
+        _file = file.toAbsolutePath();
+        _csv = _file.getFileName().toString().endsWith(".csv");
+        _interval = interval * 1000000L;
+        _start = System.nanoTime();
+        _nextDump = _start + _interval;
+        for (int k = 0; k < _phases.length; k += 1) {
+            _phases[k] = new Histogram();
+        }
+    }
+
+    /** Record the duration of one instance of PHASE, which started at
+     *  time START (as for System.nanoTime) and has just ended. */
+    void record(int phase, long start) {
+        _phases[phase].record(System.nanoTime() - start);
+    }
+
+    /** Add N to COUNTER. */
+    void add(int counter, long n) {
+        _counters[counter] += n;
+    }
+
+    /** Set COUNTER to VALUE. */
+    void set(int counter, long value) {
+        _counters[counter] = value;
+    }
+
+    /** Return true iff the interval since the last dump has passed. */
+    boolean due() {
+        return System.nanoTime() >= _nextDump;
+    }
+
+    /** Replace the file with the current totals. */
+    void dump() throws IOException {
+        long now = System.nanoTime();
+        _nextDump = now + _interval;
+        Path temp = Files.createTempFile(_file.getParent(), ".metrics",
+                                         null);
+        try (Writer out = Files.newBufferedWriter(temp,
+                                                  StandardCharsets.UTF_8)) {
+            out.write(_csv ? csv() : json((now - _start) / 1000000));
+        } catch (IOException excp) {
+            Files.deleteIfExists(temp);
+            throw excp;
+        }
+        Files.move(temp, _file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Return the totals as a JSON object, including the time ELAPSED
+     *  (milliseconds) since the Metrics was created. */
+    private String json(long elapsed) {
+        StringBuilder out = new StringBuilder();
+        out.append("{\n  \"elapsedMillis\": ").append(elapsed)
+            .append(",\n  \"counters\": {");
+        for (int k = 0; k < COUNTERS.length; k += 1) {
+            out.append(k == 0 ? "\n" : ",\n").append("    \"")
+                .append(COUNTERS[k]).append("\": ").append(_counters[k]);
+        }
+        out.append("\n  },\n  \"phases\": {");
+        for (int k = 0; k < PHASES.length; k += 1) {
+            Histogram h = _phases[k];
+            out.append(k == 0 ? "\n" : ",\n").append("    \"")
+                .append(PHASES[k]).append("\": { \"count\": ")
+                .append(h.count())
+                .append(String.format(Locale.ROOT, ", \"meanNanos\": %.1f",
+                                      h.mean()));
+            for (int q = 0; q < QUANTILES.length; q += 1) {
+                out.append(", \"").append(QUANTILE_NAMES[q])
+                    .append("Nanos\": ").append(h.quantile(QUANTILES[q]));
+            }
+            out.append(", \"maxNanos\": ").append(h.max()).append(" }");
+        }
+        out.append("\n  }\n}\n");
+        return out.toString();
+    }
+
+    /** Return the totals as CSV: one line for each counter (with only a
+     *  count), then one for each phase. */
+    private String csv() {
+        StringBuilder out = new StringBuilder("name,count,meanNanos");
+        for (String name : QUANTILE_NAMES) {
+            out.append(',').append(name).append("Nanos");
+        }
+        out.append(",maxNanos\n");
+        for (int k = 0; k < COUNTERS.length; k += 1) {
+            out.append(COUNTERS[k]).append(',').append(_counters[k])
+                .append(",".repeat(QUANTILES.length + 2)).append('\n');
+        }
+        for (int k = 0; k < PHASES.length; k += 1) {
+            Histogram h = _phases[k];
+            out.append(PHASES[k]).append(',').append(h.count())
+                .append(String.format(Locale.ROOT, ",%.1f", h.mean()));
+            for (double q : QUANTILES) {
+                out.append(',').append(h.quantile(q));
+            }
+            out.append(',').append(h.max()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** The file to which metrics are dumped. */
+    private final Path _file;
+    /** True iff dumping CSV rather than JSON. */
+    private final boolean _csv;
+    /** Time between dumps (nanoseconds). */
+    private final long _interval;
+    /** Time (as for System.nanoTime) at which the Metrics was created. */
+    private final long _start;
+    /** Time at which the next dump is due. */
+    private long _nextDump;
+    /** Histograms of the durations of the phases. */
+    private final Histogram[] _phases = new Histogram[PHASES.length];
+    /** Values of the counters. */
+    private final long[] _counters = new long[COUNTERS.length];
+}
@@ -0,0 +1,226 @@
+package game2048;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+
+import game2048.Main.Side;
+import game2048.gui.Game;
+
+/** A Policy that chooses moves by pure Monte Carlo search: for each move
+ *  that changes the board, it plays many games to the end with uniformly
+ *  random moves, and chooses the move whose playouts have the highest
+ *  mean final score.  The playouts are divided into batches that run as
+ *  fork/join tasks, in the pool of the calling thread if it is a pool
+ *  worker (as in a Simulator) and otherwise in the common pool.  Each
+ *  batch draws from its own SplittableRandom, split off from one seeded
+ *  by the caller's PRNG in an order fixed by the division into batches,
+ *  so the threads share no PRNG and, without a time budget, the moves
+ *  chosen do not depend on the number of threads.  Playouts continue
+ *  until no move is possible, regardless of the tiles reached.
+ *  @author Rafayel Mkrtchyan
+ */
+class MonteCarlo implements Policy {
+
+    /** Default number of playouts per move per round. */
+    static final int DEFAULT_ROLLOUTS = 1000;
+
+    /** Number of playouts in a batch (except perhaps the last of each
+     *  move; see _lastBatch). */
+    private static final int BATCH = 32;
+
+    /** A searcher that runs ROLLOUTS playouts of each move per round, and
+     *  runs rounds until about BUDGET milliseconds have passed (just one
+     *  round if BUDGET is 0). */
+    MonteCarlo(int rollouts, long budget) {
+        if (rollouts < 1) {
+            throw new IllegalArgumentException("rollouts must be >= 1");
+        }
+        _batches = (rollouts + BATCH - 1) / BATCH;
+        _lastBatch = rollouts - (_batches - 1) * BATCH;
+        _budget = budget * 1000000L;
+        _scores = new long[SIDES.length * _batches];
+        _counts = new int[SIDES.length * _batches];
+    }
+
+    @Override
+    public Side move(long board, Random random) {
+        long start = System.nanoTime();
+        _deadline = _budget == 0 ? Long.MAX_VALUE : start + _budget;
+        SplittableRandom root = new SplittableRandom(random.nextLong());
+        long[] totals = new long[SIDES.length];
+        long[] counts = new long[SIDES.length];
+        int n;
+        n = 0;
+        for (Side side : SIDES) {
+            long next = Bitboard.tilt(board, side);
+            if (next != board) {
+                _starts[n] = next;
+                _gains[n] = Bitboard.score(board, side);
+                _sides[n] = side;
+                n += 1;
+            }
+        }
+        do {
+            new Batches(0, n * _batches, root.split()).invoke();
+            for (int b = 0; b < n * _batches; b += 1) {
+                totals[b / _batches] += _scores[b];
+                counts[b / _batches] += _counts[b];
+            }
+        } while (_budget != 0 && System.nanoTime() < _deadline);
+
+        Side best = _sides[0];
+        double bestMean = -1;
+        for (int k = 0; k < n; k += 1) {
+            if (counts[k] > 0) {
+                double mean = (double) totals[k] / counts[k];
+                if (mean > bestMean) {
+                    best = _sides[k];
+                    bestMean = mean;
+                }
+                _rollouts += counts[k];
+            }
+        }
+        _searchTime += System.nanoTime() - start;
+        _moves += 1;
+        return best;
+    }
+
+    /** The fork/join task that runs batches FIRST .. LAST-1 of a round,
+     *  where batch b plays out move b / _batches. */
+    private class Batches extends RecursiveAction {
+
+        /** Task for batches FIRST .. LAST-1, drawing from RANDOM. */
+        Batches(int first, int last, SplittableRandom random) {
+            _first = first;
+            _last = last;
+            _random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (_last - _first > 1) {
+                int mid = (_first + _last) >>> 1;
+                invokeAll(new Batches(_first, mid, _random.split()),
+                          new Batches(mid, _last, _random.split()));
+            } else {
+                runBatch(_first, _random);
+            }
+        }
+
+        /** Range of batches. */
+        private final int _first, _last;
+        /** Source of random tiles and moves. */
+        private final SplittableRandom _random;
+    }
+
+    /** Run batch B, drawing from RANDOM, and record the total of its final
+     *  scores and its number of playouts.  Does nothing if the deadline
+     *  has passed. */
+    private void runBatch(int b, SplittableRandom random) {
+        long total = 0;
+        int count = 0;
+        if (System.nanoTime() < _deadline) {
+            long start = _starts[b / _batches];
+            int gain = _gains[b / _batches];
+            int size = b % _batches == _batches - 1 ? _lastBatch : BATCH;
+            long[] nexts = new long[SIDES.length];
+            int[] gains = new int[SIDES.length];
+            for (; count < size; count += 1) {
+                total += gain + playout(start, random, nexts, gains);
+            }
+        }
+        _scores[b] = total;
+        _counts[b] = count;
+    }
+
+    /** Return the score gained by playing from BOARD, on which a random
+     *  tile is about to be placed, until no move is possible, with random
+     *  tiles and moves drawn from RANDOM.  NEXTS and GAINS are scratch
+     *  space for the boards produced and scores gained by the moves from
+     *  each position, with room for one element per side, so that a
+     *  playout allocates nothing. */
+    static int playout(long board, SplittableRandom random, long[] nexts,
+                       int[] gains) {
+        int score = 0;
+        while (true) {
+            board = spawn(board, random);
+            int n;
+            n = 0;
+            for (Side side : SIDES) {
+                long next = Bitboard.tilt(board, side);
+                if (next != board) {
+                    nexts[n] = next;
+                    gains[n] = Bitboard.score(board, side);
+                    n += 1;
+                }
+            }
+            if (n == 0) {
+                return score;
+            }
+            int k = random.nextInt(n);
+            board = nexts[k];
+            score += gains[k];
+        }
+    }
+
+    /** Return BOARD with a tile added to a random, empty position chosen
+     *  with a single draw from RANDOM, and a value chosen as
+     *  Game.getRandomTile would.  Returns BOARD unchanged if it is full. */
+    static long spawn(long board, SplittableRandom random) {
+        int empty = Bitboard.emptyCount(board);
+        if (empty == 0) {
+            return board;
+        }
+        long value = random.nextDouble() < Game.LOW_TILE_PROBABILITY ? 1 : 2;
+        int k = random.nextInt(empty);
+        for (int shift = 0; ; shift += 4) {
+            if (((board >>> shift) & 0xF) == 0) {
+                if (k == 0) {
+                    return board | (value << shift);
+                }
+                k -= 1;
+            }
+        }
+    }
+
+    @Override
+    public String stats() {
+        double seconds = _searchTime / 1e9;
+        return String.format("%d moves, %d rollouts (%.0f rollouts/sec)",
+                             _moves, _rollouts,
+                             seconds == 0 ? 0 : _rollouts / seconds);
+    }
+
+    /** The four sides. */
+    private static final Side[] SIDES = Side.values();
+
+    /** Number of batches per move per round. */
+    private final int _batches;
+    /** Number of playouts in the last batch of each move, so that each
+     *  move gets exactly the requested number per round. */
+    private final int _lastBatch;
+    /** Time budget per move (nanoseconds), or 0 for none. */
+    private final long _budget;
+    /** Time (as for System.nanoTime) after which no batch may start. */
+    private long _deadline;
+
+    /** The moves that change the current board, with the boards they
+     *  produce and the scores they gain. */
+    private final Side[] _sides = new Side[SIDES.length];
+    /** Boards produced by the moves in _sides. */
+    private final long[] _starts = new long[SIDES.length];
+    /** Scores gained by the moves in _sides. */
+    private final int[] _gains = new int[SIDES.length];
+    /** Total final score and number of playouts of each batch of the
+     *  current round.  Each element is written only by its batch's
+     *  task. */
+    private final long[] _scores;
+    /** Number of playouts of each batch of the current round. */
+    private final int[] _counts;
+
+    /** Number of moves chosen and of playouts run. */
+    private long _moves, _rollouts;
+    /** Total time spent choosing moves (nanoseconds). */
+    private long _searchTime;
+}
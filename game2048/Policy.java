@@ -0,0 +1,25 @@
+package game2048;
+
+import java.util.Random;
+
+import game2048.Main.Side;
+
+/** A strategy for choosing moves in a game of 2048 played on a packed
+ *  board (see Bitboard).  A Policy may keep state between calls, and so
+ *  must not be shared between threads.
+ *  @author Rafayel Mkrtchyan
+ */
+interface Policy {
+
+    /** Return the side toward which to tilt BOARD, using RANDOM as the
+     *  source of any random choices.  BOARD has at least one move that
+     *  changes it. */
+    Side move(long board, Random random);
+
+    /** Return a one-line summary of the work done by move so far, or null
+     *  if there is nothing to report. */
+    default String stats() {
+        return null;
+    }
+
+}
@@ -0,0 +1,226 @@
+package game2048;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** An append-only file of game positions, as written by the --save option
+ *  of Main.  Each entry holds a GameState (board, score, and PRNG state)
+ *  together with the maximum score of the session and the number of moves
+ *  made in the game, so that a session can resume exactly where it
+ *  stopped, including its future random tiles.
+ *
+ *  <p>A file starts with an 8-byte header: the six ASCII characters
+ *  "2048PS", a version byte, and the number of rows of the board.  The
+ *  entries follow, all of the same size: one byte per square giving the
+ *  exponent of its tile (0 if empty) in row-major order, then the score,
+ *  maximum score, and move count as four-byte integers, and the PRNG
+ *  state as an eight-byte integer, most significant byte first.  On a 4x4
+ *  board an entry takes 36 bytes.  Because entries have a fixed size, the
+ *  position of entry k in the file is computed directly, and no separate
+ *  index is needed for random access.  A partial entry left at the end by
+ *  an interrupted write is ignored, and overwritten by the next append.
+ *  @author Rafayel Mkrtchyan
+ */
+class PositionStore implements Closeable {
+
+    /** The first bytes of every file. */
+    static final byte[] MAGIC = { '2', '0', '4', '8', 'P', 'S' };
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    /** Size of the header. */
+    private static final int HEADER_SIZE = MAGIC.length + 2;
+
+    /** Size of the part of an entry following the board. */
+    private static final int FIXED_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+    /** Size of the buffer for appended entries. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A store in FILE, which must already exist and have a valid
+     *  header. */
+    PositionStore(Path file) throws IOException {
+        this(file, 0);
+    }
+
+    /** A store in FILE for boards with ROWS rows.  If FILE does not exist
+     *  or is empty, creates it with a header for ROWS rows.  Otherwise, its
+     *  header must be valid and, unless ROWS is 0, give ROWS rows. */
+    PositionStore(Path file, int rows) throws IOException {
+        _channel = rows == 0 ? FileChannel.open(file, StandardOpenOption.READ)
+            : FileChannel.open(file, StandardOpenOption.READ,
+                               StandardOpenOption.WRITE,
+                               StandardOpenOption.CREATE);
+        try {
+            if (_channel.size() == 0 && rows != 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.put(MAGIC).put((byte) VERSION).put((byte) rows);
+                header.flip();
+                writeFully(header, 0);
+                _rows = rows;
+            } else {
+                _rows = readHeader(rows);
+            }
+        } catch (IOException excp) {
+            _channel.close();
+            throw excp;
+        }
+        _squares = _rows * _rows;
+        _entrySize = _squares + FIXED_SIZE;
+        _size = (_channel.size() - HEADER_SIZE) / _entrySize;
+        _end = HEADER_SIZE + _size * _entrySize;
+        _entry = ByteBuffer.allocate(_entrySize);
+    }
+
+    /** Read and check the header, and return the number of rows it gives,
+     *  which must be ROWS unless ROWS is 0. */
+    private int readHeader(int rows) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        for (byte b : MAGIC) {
+            if (header.get() != b) {
+                throw new IOException("not a 2048 position file");
+            }
+        }
+        if (header.get() != VERSION) {
+            throw new IOException("unsupported position file version");
+        }
+        int result = header.get();
+        if (result < Bitboard.SIZE || rows != 0 && result != rows) {
+            throw new IOException("position file is for " + result + "x"
+                                  + result + " boards");
+        }
+        return result;
+    }
+
+    /** Return the number of rows of the boards. */
+    int rows() {
+        return _rows;
+    }
+
+    /** Return the number of entries. */
+    long size() {
+        return _size;
+    }
+
+    /** Append an entry for position STATE with maximum score MAXSCORE after
+     *  MOVES moves. */
+    void append(GameState state, int maxScore, int moves) throws IOException {
+        if (state.size() != _rows) {
+            throw new IllegalArgumentException("wrong board size");
+        }
+        if (_buffer == null) {
+            _buffer = ByteBuffer.allocate(BUFFER_SIZE - BUFFER_SIZE
+                                          % _entrySize);
+            _channel.truncate(_end);
+        } else if (_buffer.remaining() < _entrySize) {
+            flush();
+        }
+        for (int r = 0; r < _rows; r += 1) {
+            for (int c = 0; c < _rows; c += 1) {
+                _buffer.put((byte) state.get(r, c));
+            }
+        }
+        _buffer.putInt(state.score()).putInt(maxScore).putInt(moves)
+            .putLong(state.random());
+        _size += 1;
+    }
+
+    /** Make entry K (numbered from 0) the current entry, whose contents
+     *  are returned by state, maxScore, and moves. */
+    void read(long k) throws IOException {
+        if (k < 0 || k >= _size) {
+            throw new IndexOutOfBoundsException("no position " + k);
+        }
+        flush();
+        _entry.clear();
+        readFully(_entry, HEADER_SIZE + k * _entrySize);
+        byte[] board = new byte[_squares];
+        _entry.get(board);
+        int score = _entry.getInt();
+        _maxScore = _entry.getInt();
+        _moves = _entry.getInt();
+        _state = new GameState(_rows, board, score, _entry.getLong());
+    }
+
+    /** Return the position of the current entry. */
+    GameState state() {
+        return _state;
+    }
+
+    /** Return the maximum score of the current entry. */
+    int maxScore() {
+        return _maxScore;
+    }
+
+    /** Return the move count of the current entry. */
+    int moves() {
+        return _moves;
+    }
+
+    /** Write out all entries appended so far. */
+    void flush() throws IOException {
+        if (_buffer != null && _buffer.position() > 0) {
+            _buffer.flip();
+            int n = _buffer.remaining();
+            writeFully(_buffer, _end);
+            _end += n;
+            _buffer.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /** Write all of BUF to the file starting at byte POSITION. */
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += _channel.write(buf, position);
+        }
+    }
+
+    /** Fill BUF from the file starting at byte POSITION, and prepare it for
+     *  reading. */
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = _channel.read(buf, position);
+            if (n < 0) {
+                throw new IOException("position file is truncated");
+            }
+            position += n;
+        }
+        buf.flip();
+    }
+
+    /** The file. */
+    private final FileChannel _channel;
+    /** Number of rows of the boards. */
+    private final int _rows;
+    /** Number of squares of the boards. */
+    private final int _squares;
+    /** Size of an entry. */
+    private final int _entrySize;
+    /** Number of entries, including any still in _buffer. */
+    private long _size;
+    /** Offset in the file of the end of the entries written out. */
+    private long _end;
+    /** Entries not yet written, or null if nothing has been appended. */
+    private ByteBuffer _buffer;
+    /** Space for reading one entry. */
+    private final ByteBuffer _entry;
+    /** Contents of the current entry. */
+    private GameState _state;
+    /** Maximum score and move count of the current entry. */
+    private int _maxScore, _moves;
+}
@@ -0,0 +1,30 @@
+package game2048;
+
+import java.util.Random;
+
+import game2048.Main.Side;
+
+/** A Policy that chooses uniformly among the moves that change the board.
+ *  @author Rafayel Mkrtchyan
+ */
+class RandomPolicy implements Policy {
+
+    @Override
+    public Side move(long board, Random random) {
+        int n;
+        n = 0;
+        for (Side side : SIDES) {
+            if (Bitboard.tilt(board, side) != board) {
+                _choices[n] = side;
+                n += 1;
+            }
+        }
+        return _choices[random.nextInt(n)];
+    }
+
+    /** The four sides. */
+    private static final Side[] SIDES = Side.values();
+
+    /** The moves available on the current board. */
+    private final Side[] _choices = new Side[SIDES.length];
+}
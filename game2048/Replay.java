@@ -0,0 +1,473 @@
+package game2048;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import ucb.util.CommandArgs;
+
+import game2048.gui.BinaryLog;
+import game2048.gui.GameInput;
+import game2048.gui.GameRandom;
+
+/** Tools for binary logs (see BinaryLog), as written by the --binlog
+ *  option of Main: verification by replay, and conversion to and from the
+ *  text format written by --log.  Also verifies text traces like those in
+ *  the testing directory (see TraceVerifier), and lists the best positions
+ *  in files written by the --save option (see PositionStore).
+ *  @author Rafayel Mkrtchyan
+ */
+public class Replay {
+
+    /** Process the logs given by ARGS, which contains one of these
+     *  options:
+     *    --verify=PATH: replay the binary log PATH, or all logs in
+     *        directory PATH whose names end in BinaryLog.SUFFIX, through
+     *        Main (as with --testing), checking that each is a valid
+     *        record of a session and, if its header
+     *        gives a seed, that its tiles are those the seed produces.
+     *        Reports games, moves, and scores for each log.
+     *    --to-text=FILE: print binary log FILE in text form.
+     *    --from-text=FILE --output=OUT: convert text log FILE to binary
+     *        log OUT.  The header is that recorded by --to-text in FILE,
+     *        if any, and otherwise for 4x4 boards, seed 0, and no flags,
+     *        as modified by --seed=NUM, --size=N, --endless,
+     *        --spawn=rejection|indexed, and --rng=java|splitmix (as for
+     *        Main).
+     *    --traces=PATH: run Main on the text log PATH, or on all files in
+     *        directory PATH whose names end in .in, as with --testing,
+     *        checking its output against the corresponding .out files,
+     *        for boards of --size=N rows (default 4), using --threads=N
+     *        threads (default, the number of processors).
+     *    --scores=FILE: print the --top=N (default 10) highest-scoring
+     *        positions in position file FILE.
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--verify=(.+) --to-text=(.+) --from-text=(.+) "
+                            + "--output=(.+) --seed=(\\d+) --size=(\\d+) "
+                            + "--endless --spawn=(rejection|indexed) "
+                            + "--rng=(java|splitmix) "
+                            + "--traces=(.+) --threads=(\\d+) "
+                            + "--scores=(.+) --top=(\\d+)", args);
+        int ops = (options.contains("--verify") ? 1 : 0)
+            + (options.contains("--to-text") ? 1 : 0)
+            + (options.contains("--from-text") ? 1 : 0)
+            + (options.contains("--traces") ? 1 : 0)
+            + (options.contains("--scores") ? 1 : 0);
+        if (!options.ok() || ops != 1
+            || options.contains("--from-text")
+               != options.contains("--output")) {
+            System.err.println("Usage: java game2048.Replay --verify=PATH\n"
+                               + "       java game2048.Replay --to-text=FILE\n"
+                               + "       java game2048.Replay --from-text=FILE"
+                               + " --output=OUT [ --seed=NUM ] "
+                               + "[ --size=N ]\n"
+                               + "            [ --endless ] "
+                               + "[ --spawn=rejection|indexed ] "
+                               + "[ --rng=java|splitmix ]\n"
+                               + "       java game2048.Replay --traces=PATH"
+                               + " [ --threads=N ] [ --size=N ]\n"
+                               + "       java game2048.Replay --scores=FILE"
+                               + " [ --top=N ]");
+            System.exit(1);
+        }
+
+        boolean ok;
+        try {
+            if (options.contains("--verify")) {
+                ok = verifyAll(Paths.get(options.getFirst("--verify")),
+                               System.out);
+            } else if (options.contains("--traces")) {
+                int threads = !options.contains("--threads")
+                    ? Runtime.getRuntime().availableProcessors()
+                    : options.getInt("--threads");
+                int size = !options.contains("--size") ? Main.SIZE
+                    : options.getInt("--size");
+                ok = new TraceVerifier(threads, size)
+                    .verifyAll(Paths.get(options.getFirst("--traces")),
+                               System.out);
+            } else if (options.contains("--scores")) {
+                int top = !options.contains("--top") ? DEFAULT_TOP
+                    : options.getInt("--top");
+                scores(Paths.get(options.getFirst("--scores")), top,
+                       System.out);
+                ok = true;
+            } else if (options.contains("--to-text")) {
+                toText(Paths.get(options.getFirst("--to-text")), System.out);
+                ok = true;
+            } else {
+                fromText(Paths.get(options.getFirst("--from-text")),
+                         Paths.get(options.getFirst("--output")), options);
+                ok = true;
+            }
+        } catch (IOException | RuntimeException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            ok = false;
+        }
+        System.out.flush();
+        System.exit(ok ? 0 : 1);
+    }
+
+    /** Default number of positions listed by --scores. */
+    static final int DEFAULT_TOP = 10;
+
+    /** The first line of the output of toText, giving the header of the
+     *  binary log: its name, number of rows, seed, and flags. */
+    static final Pattern HEADER =
+        Pattern.compile("# Converted from .*: (\\d+) rows, seed (\\d+), "
+                        + "flags (\\d+)\\s*");
+
+    /** Print on OUT the TOP entries of position file FILE (see
+     *  PositionStore) with the highest scores, best first. */
+    static void scores(Path file, int top, PrintStream out)
+        throws IOException {
+        try (PositionStore store = new PositionStore(file)) {
+            /* Each element is a score in the upper 32 bits and an entry
+             * number in the lower; the queue holds the best seen so far,
+             * worst first. */
+            PriorityQueue<Long> best = new PriorityQueue<>();
+            for (long k = 0; k < store.size(); k += 1) {
+                store.read(k);
+                best.add(((long) store.state().score() << Integer.SIZE) | k);
+                if (best.size() > top) {
+                    best.remove();
+                }
+            }
+            out.printf("%s: %d positions of %dx%d boards%n", file,
+                       store.size(), store.rows(), store.rows());
+            out.printf("%4s %10s %10s %8s %10s%n",
+                       "Rank", "Score", "Max tile", "Moves", "Entry");
+            List<Long> ranked = new ArrayList<>(best);
+            Collections.sort(ranked, Collections.reverseOrder());
+            for (int i = 0; i < ranked.size(); i += 1) {
+                long k = ranked.get(i) & 0xFFFFFFFFL;
+                store.read(k);
+                GameState state = store.state();
+                int maxTile = 0;
+                for (int r = 0; r < state.size(); r += 1) {
+                    for (int c = 0; c < state.size(); c += 1) {
+                        maxTile = Math.max(maxTile, state.get(r, c));
+                    }
+                }
+                out.printf("%4d %10d %10d %8d %10d%n", i + 1, state.score(),
+                           maxTile == 0 ? 0 : Bitboard.value(maxTile),
+                           store.moves(), k);
+            }
+        }
+    }
+
+    /** Return the binary logs designated by PATH: PATH itself, if it is a
+     *  file, or the files in it whose names end with BinaryLog.SUFFIX, in
+     *  order of name. */
+    static List<Path> logs(Path path) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(path)) {
+            result.add(path);
+        } else {
+            try (Stream<Path> files = Files.list(path)) {
+                files.filter(f -> f.toString().endsWith(BinaryLog.SUFFIX))
+                    .forEach(result::add);
+            }
+            Collections.sort(result);
+        }
+        return result;
+    }
+
+    /** Verify each of the logs designated by PATH (see logs), reporting
+     *  the results on OUT.  Return true iff all are valid. */
+    static boolean verifyAll(Path path, PrintStream out) throws IOException {
+        boolean ok = true;
+        long records, start;
+        records = 0;
+        start = System.nanoTime();
+        List<Path> logs = logs(path);
+        for (Path log : logs) {
+            try {
+                records += verify(log, out);
+            } catch (IOException | RuntimeException excp) {
+                out.printf("%s: INVALID: %s%n", log, excp.getMessage());
+                ok = false;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("%d logs, %d records in %.3f s (%.0f records/sec)%n",
+                   logs.size(), records, seconds, records / seconds);
+        return ok;
+    }
+
+    /** Replay the binary log FILE through a Main, as with --testing,
+     *  reporting the result on OUT.  Return the number of records.
+     *  Throws an exception if the log is invalid. */
+    static long verify(Path file, PrintStream out) throws IOException {
+        try (BinaryLog.Reader log = new BinaryLog.Reader(file)) {
+            if (log.rows() < Main.SIZE) {
+                throw new IOException("board size must be at least "
+                                      + Main.SIZE);
+            }
+            LogInput input = new LogInput(log);
+            String args = "--testing --no-display --size=" + log.rows()
+                + ((log.flags() & BinaryLog.ENDLESS) != 0 ? " --endless"
+                   : "");
+            CommandArgs options =
+                new CommandArgs(Main.OPTIONS, args.split(" "));
+            Main main = new Main(options, input,
+                                 OutputStream.nullOutputStream());
+            int games;
+            long moves;
+            games = 0;
+            moves = 0;
+            try {
+                boolean more;
+                do {
+                    more = main.play();
+                    games += 1;
+                    moves += main.moves();
+                } while (more);
+            } catch (UncheckedIOException excp) {
+                throw excp.getCause();
+            } catch (NoSuchElementException excp) {
+                throw new IOException(input.records() == 0 ? "empty log"
+                                      : "log ends where a tile is needed");
+            } finally {
+                main.close();
+            }
+            if (input.hasNext()) {
+                throw new IOException("records after Quit");
+            }
+            out.printf("%s: OK: %d games, %d moves, last score %d, "
+                       + "max score %d%s%n", file, games, moves,
+                       main.score(), main.maxScore(),
+                       input.checkTiles() ? ", tiles match seed" : "");
+            return input.records();
+        }
+    }
+
+    /** The keys and random tiles of a binary log, as input to a Game.
+     *  If the log's header gives a seed, also checks that its tiles are
+     *  those that Game.getRandomTile would generate from it, until a key
+     *  rewinds the PRNG.  Errors in the log are reported as
+     *  UncheckedIOExceptions. */
+    private static class LogInput implements GameInput {
+
+        /** Input from LOG, which is positioned at its first record. */
+        LogInput(BinaryLog.Reader log) {
+            _log = log;
+            _checkTiles = log.seed() != 0
+                && (log.flags() & BinaryLog.INDEXED_SPAWN) == 0;
+            _random =
+                GameRandom.create((log.flags() & BinaryLog.SPLITMIX) != 0
+                                  ? GameRandom.SPLITMIX : GameRandom.JAVA,
+                                  log.seed());
+        }
+
+        @Override
+        public void readTile(int[] tile) {
+            int type = next();
+            if (type == BinaryLog.END) {
+                throw new NoSuchElementException();
+            } else if (type != BinaryLog.TILE) {
+                throw failure("record %d: expected a random tile",
+                              _records);
+            } else if (_log.row() >= _log.rows()) {
+                throw failure("record %d: bad random tile: %d %d %d",
+                              _records, _log.value(), _log.row(),
+                              _log.col());
+            }
+            if (_checkTiles) {
+                int expect = _random.nextTile(_log.rows());
+                if (GameRandom.tileValue(expect) != _log.value()
+                    || GameRandom.tileRow(expect) != _log.row()
+                    || GameRandom.tileColumn(expect) != _log.col()) {
+                    throw failure("record %d: tile %d %d %d does not "
+                                  + "match seed", _records, _log.value(),
+                                  _log.row(), _log.col());
+                }
+            }
+            tile[0] = _log.value();
+            tile[1] = _log.row();
+            tile[2] = _log.col();
+        }
+
+        @Override
+        public String readKey() {
+            int type = next();
+            if (type == BinaryLog.END) {
+                return null;
+            } else if (type != BinaryLog.KEY) {
+                throw failure("record %d: unexpected random tile",
+                              _records);
+            }
+            String key = _log.key();
+            if (key.equals("Undo") || key.equals("Redo")) {
+                /* These rewind the PRNG to an earlier state. */
+                _checkTiles = false;
+            }
+            return key;
+        }
+
+        /** Return true iff records remain to be read. */
+        boolean hasNext() {
+            return next() != BinaryLog.END;
+        }
+
+        /** Return the number of records read. */
+        long records() {
+            return _records;
+        }
+
+        /** Return true iff all tiles so far have been checked against the
+         *  seed. */
+        boolean checkTiles() {
+            return _checkTiles;
+        }
+
+        /** Read the next record of the log, returning its type. */
+        private int next() {
+            try {
+                int type = _log.next();
+                if (type != BinaryLog.END) {
+                    _records += 1;
+                }
+                return type;
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+        }
+
+        /** Return an exception reporting an error in the log, with the
+         *  message given by MSG and ARGS as for String.format. */
+        private static UncheckedIOException failure(String msg,
+                                                    Object... args) {
+            return new UncheckedIOException(
+                new IOException(String.format(msg, args)));
+        }
+
+        /** The log. */
+        private final BinaryLog.Reader _log;
+        /** Generator of the tiles expected from the seed. */
+        private final GameRandom _random;
+        /** True iff tiles are still being checked against _random. */
+        private boolean _checkTiles;
+        /** Number of records read. */
+        private long _records;
+    }
+
+    /** Print binary log FILE on OUT in the text format written by
+     *  --log, preceded by a comment giving its header (see HEADER). */
+    static void toText(Path file, PrintStream out) throws IOException {
+        try (BinaryLog.Reader log = new BinaryLog.Reader(file)) {
+            out.printf("# Converted from %s: %d rows, seed %d, flags %d%n",
+                       file, log.rows(), log.seed(), log.flags());
+            StringBuilder text = new StringBuilder();
+            int type;
+            while ((type = log.next()) != BinaryLog.END) {
+                if (type == BinaryLog.TILE) {
+                    text.append("T ").append(log.value()).append(' ')
+                        .append(log.row()).append(' ').append(log.col());
+                } else {
+                    text.append('K').append(log.key());
+                }
+                text.append('\n');
+                if (text.length() >= 1 << 16) {
+                    out.print(text);
+                    text.setLength(0);
+                }
+            }
+            out.print(text);
+        }
+    }
+
+    /** Convert the text log FILE to a binary log OUT.  Its header gives
+     *  the number of rows, seed, and flags in the first line of FILE, if
+     *  that line matches HEADER, and otherwise a board of Main.SIZE rows,
+     *  seed 0, and no flags, except as OPTIONS (as for main) specify. */
+    static void fromText(Path file, Path out, CommandArgs options)
+        throws IOException {
+        try (BufferedReader in =
+             Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String first = in.readLine();
+            int rows = Main.SIZE, flags = 0;
+            long seed = 0;
+            Matcher header = HEADER.matcher(first == null ? "" : first);
+            if (header.matches()) {
+                rows = Integer.parseInt(header.group(1));
+                seed = Long.parseLong(header.group(2));
+                flags = Integer.parseInt(header.group(3));
+            }
+            if (options.contains("--size")) {
+                rows = options.getInt("--size");
+            }
+            if (options.contains("--seed")) {
+                seed = options.getLong("--seed");
+            }
+            if (options.contains("--endless")) {
+                flags |= BinaryLog.ENDLESS;
+            }
+            if (options.contains("--spawn")) {
+                flags = withFlag(flags, BinaryLog.INDEXED_SPAWN,
+                                 "indexed".equals(options
+                                                  .getFirst("--spawn")));
+            }
+            if (options.contains("--rng")) {
+                flags = withFlag(flags, BinaryLog.SPLITMIX,
+                                 GameRandom.SPLITMIX
+                                 .equals(options.getFirst("--rng")));
+            }
+            try (BinaryLog.Writer log =
+                 new BinaryLog.Writer(out, rows, seed, flags)) {
+                String line = first;
+                int lineNum = 1;
+                while (line != null) {
+                    record(log, line.trim(), lineNum);
+                    line = in.readLine();
+                    lineNum += 1;
+                }
+            }
+        }
+    }
+
+    /** Return FLAGS with the bits of FLAG set if ON, and cleared
+     *  otherwise. */
+    private static int withFlag(int flags, int flag, boolean on) {
+        return on ? flags | flag : flags & ~flag;
+    }
+
+    /** Write the record given by LINE, line LINENUM of a text log, to LOG,
+     *  if it is not blank or a comment. */
+    private static void record(BinaryLog.Writer log, String line,
+                               int lineNum) throws IOException {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        } else if (line.startsWith("K")) {
+            log.key(line.substring(1));
+        } else if (line.startsWith("T")) {
+            String[] fields = line.substring(1).trim().split("\\s+");
+            if (fields.length != 3) {
+                throw new IOException(String.format("line %d: bad tile",
+                                                    lineNum));
+            }
+            log.tile(Integer.parseInt(fields[0]),
+                     Integer.parseInt(fields[1]),
+                     Integer.parseInt(fields[2]));
+        } else {
+            throw new IOException(String.format("line %d: unrecognized "
+                                                + "input", lineNum));
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+package game2048;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import game2048.Main.Side;
+import game2048.gui.Game;
+import game2048.gui.GameRandom;
+
+/** Plays many complete games of 2048 on packed boards (see Bitboard),
+ *  without a Game, spread over a pool of threads, and reports aggregate
+ *  statistics.  Each game draws its random tiles (and any random choices
+ *  of its Policy) from its own PRNG, seeded from the overall seed and the
+ *  game's index, so that the results do not depend on the number of
+ *  threads.  In endless games, tiles stop merging at Bitboard.MAX_EXPONENT
+ *  (32768), the largest exponent a packed board can hold.
+ *
+ *  <p>With the GameRandom.JAVA generator, game k is seeded with
+ *  gameSeed(seed, k), as it always has been.  With another generator, the
+ *  generators of the games are split (see GameRandom.split) from one
+ *  seeded with the overall seed, following the tree of tasks into which
+ *  the games are divided.  That tree depends only on the number of games,
+ *  so the streams, too, are reproducible and independent of the number
+ *  of threads.
+ *  @author Rafayel Mkrtchyan
+ */
+class Simulator {
+
+    /** Number of consecutive games handled by a single task. */
+    private static final int GRAIN = 8;
+
+    /** A simulator that plays GAMES games on THREADS threads, using moves
+     *  chosen by Policies named NAME obtained from POLICIES, and random
+     *  tiles from generators named RNG (see GameRandom.create) derived from
+     *  SEED (0 for a random seed), placed as by
+     *  indexedPiece if INDEXED, and otherwise as by randomPiece.  Games
+     *  continue past MAXTILEVALUE iff ENDLESS. */
+    Simulator(int games, int threads, long seed, String rng, String name,
+              Supplier<Policy> policies, boolean indexed, boolean endless) {
+        if (games <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("need at least one game "
+                                               + "and one thread");
+        }
+        _games = games;
+        _threads = threads;
+        _seed = seed != 0 ? seed : new Random().nextLong();
+        _rng = rng;
+        _policyName = name;
+        _spawnIndexed = indexed;
+        _endless = endless;
+        _policies = ThreadLocal.withInitial(() -> {
+            Policy policy = policies.get();
+            synchronized (_allPolicies) {
+                _allPolicies.add(policy);
+            }
+            return policy;
+        });
+        _scores = new int[games];
+        _maxTiles = new int[games];
+        _moves = new int[games];
+    }
+
+    /** Return the seed for game number K of a run with seed SEED.  The
+     *  result is a SplitMix64 hash of the two, so that nearby K give
+     *  unrelated streams. */
+    static long gameSeed(long seed, int k) {
+        long z = seed + (k + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Return BOARD with a tile added to a random, empty position, chosen as
+     *  Main.setRandomPiece and Game.getRandomTile would choose it, using
+     *  RANDOM.  Returns BOARD unchanged if it is full. */
+    static long randomPiece(long board, GameRandom random) {
+        if (Bitboard.emptyCount(board) == 0) {
+            return board;
+        }
+        while (true) {
+            int tile = random.nextTile(Bitboard.SIZE);
+            int r = GameRandom.tileRow(tile), c = GameRandom.tileColumn(tile);
+            if (Bitboard.get(board, r, c) == 0) {
+                return Bitboard.set(board, r, c, GameRandom.tileValue(tile));
+            }
+        }
+    }
+
+    /** Return BOARD with a tile added to a random, empty position, using a
+     *  single draw from RANDOM to choose the position, and choosing the
+     *  value as Game.getRandomTile would.  Returns BOARD unchanged if it
+     *  is full. */
+    static long indexedPiece(long board, Random random) {
+        int empty = Bitboard.emptyCount(board);
+        if (empty == 0) {
+            return board;
+        }
+        long value = 1 + (int) (random.nextDouble()
+                                / Game.LOW_TILE_PROBABILITY);
+        int k = random.nextInt(empty);
+        for (int shift = 0; ; shift += 4) {
+            if (((board >>> shift) & 0xF) == 0) {
+                if (k == 0) {
+                    return board | (value << shift);
+                }
+                k -= 1;
+            }
+        }
+    }
+
+    /** Return BOARD with a random tile added as selected for this
+     *  simulation, using RANDOM. */
+    private long spawn(long board, GameRandom random) {
+        return _spawnIndexed ? indexedPiece(board, random)
+            : randomPiece(board, random);
+    }
+
+    /** Return true iff the game on BOARD is over. */
+    static boolean gameOver(long board) {
+        return gameOver(board, false);
+    }
+
+    /** Return true iff the game on BOARD is over, where reaching
+     *  MAXTILEVALUE does not end it if ENDLESS. */
+    static boolean gameOver(long board, boolean endless) {
+        return (!endless && Bitboard.reaches(board, Main.MAX_EXPONENT))
+            || !Bitboard.canMove(board);
+    }
+
+    /** Play game number K with moves from POLICY and random tiles from
+     *  RANDOM, recording its final score, largest tile, and number of
+     *  moves. */
+    private void playGame(int k, Policy policy, GameRandom random) {
+        long board = spawn(0, random);
+        int score, moves;
+        score = moves = 0;
+        while (true) {
+            if (!gameOver(board, _endless)) {
+                board = spawn(board, random);
+            }
+            if (gameOver(board, _endless)) {
+                break;
+            }
+            Side side = policy.move(board, random);
+            long next = Bitboard.tilt(board, side);
+            if (next == board) {
+                throw new IllegalStateException("policy chose a move that "
+                                                + "does not change the board");
+            }
+            score += Bitboard.score(board, side);
+            moves += 1;
+            board = next;
+        }
+        _scores[k] = score;
+        _maxTiles[k] = Bitboard.maxExponent(board);
+        _moves[k] = moves;
+    }
+
+    /** A task that plays games [_from .. _to). */
+    private class Games extends RecursiveAction {
+
+        /** A task for games FROM through TO - 1, whose generators are split
+         *  from RANDOM, or seeded as by gameSeed if RANDOM is null. */
+        Games(int from, int to, GameRandom random) {
+            _from = from;
+            _to = to;
+            _random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= GRAIN) {
+                Policy policy = _policies.get();
+                for (int k = _from; k < _to; k += 1) {
+                    playGame(k, policy,
+                             _random == null
+                             ? GameRandom.create(GameRandom.JAVA,
+                                                 gameSeed(_seed, k))
+                             : _random.split());
+                }
+            } else {
+                int mid = (_from + _to) >>> 1;
+                GameRandom first = _random == null ? null : _random.split();
+                invokeAll(new Games(_from, mid, first),
+                          new Games(mid, _to, _random));
+            }
+        }
+
+        /** Range of games to play. */
+        private final int _from, _to;
+        /** Generator from which those of the games are split, or null. */
+        private final GameRandom _random;
+    }
+
+    /** Play all the games. */
+    void run() {
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        long start = System.nanoTime();
+        try {
+            pool.invoke(new Games(0, _games,
+                                  GameRandom.JAVA.equals(_rng) ? null
+                                  : GameRandom.create(_rng, _seed)));
+        } finally {
+            pool.shutdown();
+        }
+        _elapsed = System.nanoTime() - start;
+    }
+
+    /** Print statistics about the games played by run on OUT. */
+    void report(PrintStream out) {
+        long totalScore, totalMoves;
+        int minScore, maxScore, minMoves, maxMoves;
+        totalScore = totalMoves = 0;
+        minScore = minMoves = Integer.MAX_VALUE;
+        maxScore = maxMoves = 0;
+        int[] scoreCounts = new int[Integer.SIZE];
+        int[] tileCounts = new int[Bitboard.MAX_EXPONENT + 1];
+        for (int k = 0; k < _games; k += 1) {
+            totalScore += _scores[k];
+            totalMoves += _moves[k];
+            minScore = Math.min(minScore, _scores[k]);
+            maxScore = Math.max(maxScore, _scores[k]);
+            minMoves = Math.min(minMoves, _moves[k]);
+            maxMoves = Math.max(maxMoves, _moves[k]);
+            scoreCounts[Integer.SIZE
+                        - Integer.numberOfLeadingZeros(_scores[k])] += 1;
+            tileCounts[_maxTiles[k]] += 1;
+        }
+        double seconds = _elapsed / 1e9;
+
+        out.printf("Games: %d  Threads: %d  Policy: %s  Seed: %d  "
+                   + "RNG: %s  Spawn: %s%s%n", _games, _threads,
+                   _policyName, _seed, _rng,
+                   _spawnIndexed ? "indexed" : "rejection",
+                   _endless ? "  Endless" : "");
+        out.printf("Time: %.3f s  (%.1f games/sec, %.0f moves/sec)%n",
+                   seconds, _games / seconds, totalMoves / seconds);
+        out.printf("Score: mean %.1f  min %d  max %d%n",
+                   (double) totalScore / _games, minScore, maxScore);
+        out.printf("Moves per game: mean %.1f  min %d  max %d%n",
+                   (double) totalMoves / _games, minMoves, maxMoves);
+        out.printf("Score histogram:%n");
+        for (int b = 0; b < scoreCounts.length; b += 1) {
+            if (scoreCounts[b] != 0) {
+                out.printf("  %8d .. %8d  %8d  %5.1f%%%n",
+                           b == 0 ? 0 : 1L << (b - 1), (1L << b) - 1,
+                           scoreCounts[b], 100.0 * scoreCounts[b] / _games);
+            }
+        }
+        out.printf("Largest tile:%n");
+        for (int e = 0; e < tileCounts.length; e += 1) {
+            if (tileCounts[e] != 0) {
+                out.printf("  %8d  %8d  %5.1f%%%n", Bitboard.value(e),
+                           tileCounts[e], 100.0 * tileCounts[e] / _games);
+            }
+        }
+        for (Policy policy : _allPolicies) {
+            String stats = policy.stats();
+            if (stats != null) {
+                out.printf("Policy: %s%n", stats);
+            }
+        }
+    }
+
+    /** Number of games to play. */
+    private final int _games;
+    /** Number of threads to use. */
+    private final int _threads;
+    /** Seed from which the games' seeds are derived. */
+    private final long _seed;
+    /** Name of the generators of random tiles. */
+    private final String _rng;
+    /** Name of the policy choosing moves. */
+    private final String _policyName;
+    /** True iff random tiles are placed by indexedPiece. */
+    private final boolean _spawnIndexed;
+    /** True iff games continue past MAXTILEVALUE. */
+    private final boolean _endless;
+    /** The Policy used by each thread. */
+    private final ThreadLocal<Policy> _policies;
+    /** All Policies created for _policies. */
+    private final List<Policy> _allPolicies = new ArrayList<>();
+    /** Final score, largest exponent, and number of moves for each
+     *  game. */
+    private final int[] _scores, _maxTiles, _moves;
+    /** Time taken by run (nanoseconds). */
+    private long _elapsed;
+}
@@ -0,0 +1,120 @@
+package game2048;
+
+import game2048.Main.Side;
+
+/** A TiltKernel that tilts each board with word-wide bit operations
+ *  (SIMD within a register) rather than table lookups: all four rows of
+ *  a board are compacted and merged at once, a column at a time, using
+ *  masks that select the rows in which a square is empty or in which two
+ *  squares merge.  Columns are handled by transposing, and tilts toward
+ *  the east by reversing the order of the columns.  The same sequence of
+ *  operations, applied to vectors of boards, is the vector kernel.
+ *  @author Rafayel Mkrtchyan
+ */
+class SwarTilt implements TiltKernel {
+
+    /** Bit 0 of each nibble in column C (of each row), for 0 <= C < 4. */
+    static final long[] COLUMN_ONES = {
+        0x0001000100010001L, 0x0010001000100010L,
+        0x0100010001000100L, 0x1000100010001000L
+    };
+
+    /** The nibbles in columns C .. 3 of each row, for 0 <= C < 4. */
+    static final long[] TAIL = {
+        0xFFFFFFFFFFFFFFFFL, 0xFFF0FFF0FFF0FFF0L,
+        0xFF00FF00FF00FF00L, 0xF000F000F000F000L
+    };
+
+    /** Bit 0 of each nibble. */
+    static final long NIBBLE_ONES = 0x1111111111111111L;
+
+    @Override
+    public void tilt(long[] boards, long[] out, int n, Side side) {
+        for (int k = 0; k < n; k += 1) {
+            out[k] = tilt(boards[k], side);
+        }
+    }
+
+    /** Return BOARD tilted toward SIDE, as for Bitboard.tilt. */
+    static long tilt(long board, Side side) {
+        switch (side) {
+        case WEST:
+            return tiltWest(board);
+        case EAST:
+            return Symmetry.flipColumns(tiltWest(
+                Symmetry.flipColumns(board)));
+        case NORTH:
+            return Bitboard.transpose(tiltWest(Bitboard.transpose(board)));
+        case SOUTH:
+            return Bitboard.transpose(Symmetry.flipColumns(
+                tiltWest(Symmetry.flipColumns(Bitboard.transpose(board)))));
+        default:
+            throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return BOARD with every row tilted toward column 0.  First closes
+     *  the gaps in columns 0, 1, and 2 (up to three, two, and one of them),
+     *  then merges equal squares in columns 0 and 1, 1 and 2, and 2 and
+     *  3, in that order. */
+    static long tiltWest(long board) {
+        board = close(board, 0);
+        board = close(board, 0);
+        board = close(board, 0);
+        board = close(board, 1);
+        board = close(board, 1);
+        board = close(board, 2);
+        board = merge(board, 0);
+        board = merge(board, 1);
+        return merge(board, 2);
+    }
+
+    /** Return BOARD with the squares in columns C+1 .. 3 moved one column
+     *  toward column 0 in each row where the square in column C is
+     *  empty. */
+    private static long close(long board, int c) {
+        return shiftTail(board, ~nonzero(board) & COLUMN_ONES[c], c);
+    }
+
+    /** Return BOARD with the squares in columns C and C+1 merged into
+     *  column C in each row where they are equal, non-empty, and not of
+     *  Bitboard.MAX_EXPONENT, and the squares beyond moved up. */
+    private static long merge(long board, int c) {
+        long rows = ~nonzero(board ^ (board >>> 4)) & nonzero(board)
+            & ~full(board) & COLUMN_ONES[c];
+        return shiftTail(board + rows, rows << 4, c + 1);
+    }
+
+    /** Return BOARD with the squares in columns C+1 .. 3 moved to columns
+     *  C .. 2, and column 3 emptied, in each row where bit 0 of the nibble
+     *  in column C of ROWS is set. */
+    private static long shiftTail(long board, long rows, int c) {
+        long tail = spread(rows) & TAIL[c];
+        return (board & ~tail) | ((board >>> 4) & tail & ~TAIL[3]);
+    }
+
+    /** Return X, in which only bit 0 of some nibbles is set, with all bits
+     *  of each such nibble and of the three nibbles above it set. */
+    private static long spread(long x) {
+        x |= x << 1;
+        x |= x << 2;
+        x |= x << 4;
+        return x | (x << 8);
+    }
+
+    /** Return a word with bit 0 of each nibble set iff that nibble of X is
+     *  not 0. */
+    private static long nonzero(long x) {
+        x |= x >>> 1;
+        x |= x >>> 2;
+        return x & NIBBLE_ONES;
+    }
+
+    /** Return a word with bit 0 of each nibble set iff that nibble of X is
+     *  Bitboard.MAX_EXPONENT. */
+    private static long full(long x) {
+        x &= x >>> 1;
+        x &= x >>> 2;
+        return x & NIBBLE_ONES;
+    }
+}
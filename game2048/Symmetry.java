@@ -0,0 +1,211 @@
+package game2048;
+
+import game2048.Main.Side;
+
+/** The eight symmetries (rotations and reflections) of a packed 4x4 board
+ *  (see Bitboard), canonical representatives of the boards they relate,
+ *  and Zobrist hashing.  Symmetric boards have the same game value, so a
+ *  cache of positions can store just the canonical board of each class,
+ *  as returned by canonical, and an AI can search the canonical board and
+ *  map its chosen move back with original.
+ *
+ *  <p>A symmetry is denoted by a transform number from 0 to TRANSFORMS-1:
+ *  apply first transposes the board if bit TRANSPOSE is set, then
+ *  reverses the order of its rows if bit FLIP_ROWS is set, and finally
+ *  reverses the order of its columns if bit FLIP_COLUMNS is set.
+ *  Transform 0 is the identity.
+ *  @author Rafayel Mkrtchyan
+ */
+final class Symmetry {
+
+    /** Number of symmetries. */
+    static final int TRANSFORMS = 8;
+
+    /** Bits of a transform number. */
+    static final int FLIP_COLUMNS = 1, FLIP_ROWS = 2, TRANSPOSE = 4;
+
+    /** Zobrist keys: the hash of a board is the exclusive or of
+     *  KEYS[16 * k + e] over the squares k, where e is the exponent of
+     *  the tile on square k.  Empty squares (e = 0) have key 0, so the
+     *  empty board hashes to 0. */
+    private static final long[] KEYS = new long[16 * 16];
+
+    static {
+        for (int k = 0; k < KEYS.length; k += 1) {
+            KEYS[k] = k % 16 == 0 ? 0 : Simulator.gameSeed(0x2048, k);
+        }
+    }
+
+    /** Not instantiable. */
+    private Symmetry() {
+    }
+
+    /** Return BOARD with the order of its rows reversed. */
+    static long flipRows(long board) {
+        return (board << 48) | ((board << 16) & 0x0000FFFF00000000L)
+            | ((board >>> 16) & 0x00000000FFFF0000L) | (board >>> 48);
+    }
+
+    /** Return BOARD with the order of its columns reversed. */
+    static long flipColumns(long board) {
+        return ((board & 0x000F000F000F000FL) << 12)
+            | ((board & 0x00F000F000F000F0L) << 4)
+            | ((board >>> 4) & 0x00F000F000F000F0L)
+            | ((board >>> 12) & 0x000F000F000F000FL);
+    }
+
+    /** Return the result of applying transform T to BOARD. */
+    static long apply(long board, int t) {
+        if ((t & TRANSPOSE) != 0) {
+            board = Bitboard.transpose(board);
+        }
+        if ((t & FLIP_ROWS) != 0) {
+            board = flipRows(board);
+        }
+        if ((t & FLIP_COLUMNS) != 0) {
+            board = flipColumns(board);
+        }
+        return board;
+    }
+
+    /** Return the result of undoing transform T on BOARD, so that
+     *  undo(apply(B, T), T) == B. */
+    static long undo(long board, int t) {
+        if ((t & FLIP_COLUMNS) != 0) {
+            board = flipColumns(board);
+        }
+        if ((t & FLIP_ROWS) != 0) {
+            board = flipRows(board);
+        }
+        if ((t & TRANSPOSE) != 0) {
+            board = Bitboard.transpose(board);
+        }
+        return board;
+    }
+
+    /** Return the canonical representative of the symmetry class of
+     *  BOARD: the least, as an unsigned number, of its eight images. */
+    static long canonical(long board) {
+        long t = Bitboard.transpose(board);
+        long a = board, b = flipColumns(board), c = t, d = flipColumns(t);
+        return min(min(min(a, b), min(flipRows(a), flipRows(b))),
+                   min(min(c, d), min(flipRows(c), flipRows(d))));
+    }
+
+    /** Return a transform T such that apply(BOARD, T) ==
+     *  canonical(BOARD).  If several do, returns the least. */
+    static int canonicalTransform(long board) {
+        long t = Bitboard.transpose(board);
+        long b = flipColumns(board), d = flipColumns(t);
+        long min = board;
+        int best = 0;
+        if (Long.compareUnsigned(b, min) < 0) {
+            min = b;
+            best = 1;
+        }
+        if (Long.compareUnsigned(flipRows(board), min) < 0) {
+            min = flipRows(board);
+            best = 2;
+        }
+        if (Long.compareUnsigned(flipRows(b), min) < 0) {
+            min = flipRows(b);
+            best = 3;
+        }
+        if (Long.compareUnsigned(t, min) < 0) {
+            min = t;
+            best = 4;
+        }
+        if (Long.compareUnsigned(d, min) < 0) {
+            min = d;
+            best = 5;
+        }
+        if (Long.compareUnsigned(flipRows(t), min) < 0) {
+            min = flipRows(t);
+            best = 6;
+        }
+        if (Long.compareUnsigned(flipRows(d), min) < 0) {
+            best = 7;
+        }
+        return best;
+    }
+
+    /** Return the unsigned minimum of A and B. */
+    private static long min(long a, long b) {
+        return Long.compareUnsigned(a, b) <= 0 ? a : b;
+    }
+
+    /** Return the side of a board transformed by T that corresponds to
+     *  SIDE of the original board, so that tilting apply(B, T) toward the
+     *  result is the same as tilting B toward SIDE and then applying
+     *  T. */
+    static Side transform(Side side, int t) {
+        if ((t & TRANSPOSE) != 0) {
+            side = transposed(side);
+        }
+        if ((t & FLIP_ROWS) != 0) {
+            side = side == Side.NORTH ? Side.SOUTH
+                : side == Side.SOUTH ? Side.NORTH : side;
+        }
+        if ((t & FLIP_COLUMNS) != 0) {
+            side = side == Side.WEST ? Side.EAST
+                : side == Side.EAST ? Side.WEST : side;
+        }
+        return side;
+    }
+
+    /** Return the side of an original board that corresponds to SIDE of
+     *  that board transformed by T: the inverse of transform, as needed
+     *  to play a move chosen on a canonical board. */
+    static Side original(Side side, int t) {
+        if ((t & FLIP_COLUMNS) != 0) {
+            side = side == Side.WEST ? Side.EAST
+                : side == Side.EAST ? Side.WEST : side;
+        }
+        if ((t & FLIP_ROWS) != 0) {
+            side = side == Side.NORTH ? Side.SOUTH
+                : side == Side.SOUTH ? Side.NORTH : side;
+        }
+        if ((t & TRANSPOSE) != 0) {
+            side = transposed(side);
+        }
+        return side;
+    }
+
+    /** Return the side that SIDE becomes when the board is transposed. */
+    private static Side transposed(Side side) {
+        switch (side) {
+        case NORTH:
+            return Side.WEST;
+        case WEST:
+            return Side.NORTH;
+        case SOUTH:
+            return Side.EAST;
+        case EAST:
+            return Side.SOUTH;
+        default:
+            throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return the Zobrist hash of BOARD. */
+    static long hash(long board) {
+        long result = 0;
+        for (int k = 0; k < KEYS.length; k += 16, board >>>= 4) {
+            result ^= KEYS[k + (int) (board & 0xF)];
+        }
+        return result;
+    }
+
+    /** Return HASH, the hash of a board, updated for a change of the
+     *  square at row R and column C from exponent OLD to exponent E. */
+    static long update(long hash, int r, int c, int old, int e) {
+        int k = 16 * (Bitboard.SIZE * r + c);
+        return hash ^ KEYS[k + old] ^ KEYS[k + e];
+    }
+
+    /** Return the Zobrist hash of the canonical representative of BOARD,
+     *  which is the same for all boards related by a symmetry. */
+    static long canonicalHash(long board) {
+        return hash(canonical(board));
+    }
+}
@@ -0,0 +1,364 @@
+package game2048;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import ucb.util.CommandArgs;
+
+import game2048.Main.Side;
+import game2048.gui.Game;
+import game2048.gui.GameRandom;
+
+/** Builds a ValueTable of exact values of near-terminal positions: the
+ *  positions in the last few moves of games played on packed boards (as
+ *  by Simulator) with moves from a Policy.  The value of a position is
+ *  the expected score gained in at most the next N (--horizon) moves with
+ *  the best play, where tiles are placed as in Main (on a uniformly
+ *  chosen empty square, a 2 with probability Game.LOW_TILE_PROBABILITY
+ *  and otherwise a 4), computed by a full expectimax search with no
+ *  heuristic.  It is thus exact for positions from which the game ends
+ *  within N moves, and otherwise the exact value over that horizon.
+ *
+ *  <p>Entries go directly into the mapped file, so the table need not fit
+ *  on the heap: the operating system writes pages back to the file as it
+ *  needs their memory, and the rest when the table is closed.  The games
+ *  are played and searched on several threads; only the insertions, which
+ *  are short, are serialized.
+ *  @author Rafayel Mkrtchyan
+ */
+public class TableBuilder {
+
+    /** Default number of games played. */
+    static final int DEFAULT_GAMES = 1000;
+
+    /** Default number of positions from the end of each game stored. */
+    static final int DEFAULT_TAIL = 16;
+
+    /** Default search depth of the values. */
+    static final int DEFAULT_HORIZON = 3;
+
+    /** Number of consecutive games handled by a single task. */
+    private static final int GRAIN = 8;
+
+    /** Build the table described by ARGS, which contains --output=FILE
+     *  (the table), and optionally --games=N (default DEFAULT_GAMES),
+     *  --tail=N (number of positions stored from the end of each game;
+     *  default DEFAULT_TAIL), --horizon=N (search depth of the values;
+     *  default DEFAULT_HORIZON), --bits=N (log2 of the number of slots;
+     *  default, enough for all the positions), --seed=NUM, --threads=K,
+     *  --spawn=rejection|indexed, --endless, and --policy=NAME with the
+     *  options that configure it, as for the --simulate option of Main. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--output=(.+) --games=(\\d+) --tail=(\\d+) "
+                            + "--horizon=(\\d+) --bits=(\\d+) "
+                            + "--seed=(\\d+) --threads=(\\d+) "
+                            + "--spawn=(rejection|indexed) --endless "
+                            + "--policy=(\\w+) --depth=(\\d+) "
+                            + "--budget=(\\d+) --rollouts=(\\d+) "
+                            + "--table=(.+)", args);
+        if (!options.ok() || !options.contains("--output")) {
+            System.err.println("Usage: java game2048.TableBuilder "
+                               + "--output=FILE [ --games=N ] "
+                               + "[ --tail=N ] [ --horizon=N ]\n"
+                               + "       [ --bits=N ] [ --seed=NUM ] "
+                               + "[ --threads=K ] [ --spawn=... ] "
+                               + "[ --endless ]\n"
+                               + "       [ --policy=NAME [ --depth=N ] "
+                               + "[ --rollouts=N ] [ --budget=MS ] ]");
+            System.exit(1);
+        }
+
+        int games = !options.contains("--games") ? DEFAULT_GAMES
+            : options.getInt("--games");
+        int tail = !options.contains("--tail") ? DEFAULT_TAIL
+            : options.getInt("--tail");
+        int horizon = !options.contains("--horizon") ? DEFAULT_HORIZON
+            : options.getInt("--horizon");
+        int bits = !options.contains("--bits")
+            ? bitsFor((long) games * tail) : options.getInt("--bits");
+        int threads = !options.contains("--threads")
+            ? Runtime.getRuntime().availableProcessors()
+            : options.getInt("--threads");
+        long seed = !options.contains("--seed") ? 0
+            : options.getLong("--seed");
+        String policy = !options.contains("--policy") ? "random"
+            : options.getFirst("--policy");
+        boolean ok;
+        try {
+            TableBuilder builder =
+                new TableBuilder(games, tail, horizon, threads, seed,
+                                 Main.policies(policy, options),
+                                 "indexed".equals(options
+                                                  .getFirst("--spawn")),
+                                 options.contains("--endless"));
+            ok = builder.build(Paths.get(options.getFirst("--output")),
+                               bits, System.out);
+        } catch (IOException | RuntimeException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            ok = false;
+        }
+        System.out.flush();
+        System.exit(ok ? 0 : 1);
+    }
+
+    /** Return the log2 of the number of slots needed to hold ENTRIES
+     *  entries. */
+    static int bitsFor(long entries) {
+        long slots = (long) Math.ceil(entries / ValueTable.MAX_LOAD);
+        int result = 64 - Long.numberOfLeadingZeros(Math.max(slots, 1) - 1);
+        return Math.max(ValueTable.MIN_BITS, result);
+    }
+
+    /** A builder that plays GAMES games on THREADS threads with moves from
+     *  Policies obtained from POLICIES and random tiles derived from SEED
+     *  (0 for a random seed), placed as by Simulator.indexedPiece if
+     *  INDEXED and otherwise as by Simulator.randomPiece, continuing past
+     *  MAXTILEVALUE iff ENDLESS, and stores the values to depth HORIZON of
+     *  the last TAIL positions of each. */
+    TableBuilder(int games, int tail, int horizon, int threads, long seed,
+                 Supplier<Policy> policies, boolean indexed,
+                 boolean endless) {
+        if (games <= 0 || threads <= 0 || tail <= 0 || horizon <= 0) {
+            throw new IllegalArgumentException("need at least one game, "
+                                               + "thread, position, and "
+                                               + "move of depth");
+        }
+        _games = games;
+        _tail = tail;
+        _horizon = horizon;
+        _threads = threads;
+        _seed = seed != 0 ? seed : new Random().nextLong();
+        _policies = ThreadLocal.withInitial(policies);
+        _spawnIndexed = indexed;
+        _endless = endless;
+    }
+
+    /** Build a table with 2 ** BITS slots in FILE, replacing any existing
+     *  file, and report on OUT.  Return true iff every position was
+     *  stored. */
+    boolean build(Path file, int bits, PrintStream out) throws IOException {
+        long start = System.nanoTime();
+        try (ValueTable table = new ValueTable(file, bits, _horizon,
+                                               _endless)) {
+            _table = table;
+            ForkJoinPool pool = new ForkJoinPool(_threads);
+            try {
+                pool.invoke(new Games(0, _games));
+            } finally {
+                pool.shutdown();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.printf("%d games, %d positions, %d entries (%d slots, "
+                       + "load %.2f), %d skipped as full, in %.1f s%n",
+                       _games, _positions, table.size(), table.capacity(),
+                       (double) table.size() / table.capacity(),
+                       _skipped, seconds);
+        } finally {
+            _table = null;
+        }
+        return _skipped == 0;
+    }
+
+    /** Play game number K with moves from POLICY, and store the values of
+     *  its last _tail positions with SEARCHER. */
+    private void buildGame(int k, Policy policy, Searcher searcher) {
+        GameRandom random =
+            GameRandom.create(GameRandom.JAVA, Simulator.gameSeed(_seed, k));
+        long[] recent = new long[_tail];
+        int moves;
+        long board = spawn(0, random);
+        moves = 0;
+        while (true) {
+            if (!Simulator.gameOver(board, _endless)) {
+                board = spawn(board, random);
+            }
+            if (Simulator.gameOver(board, _endless)) {
+                break;
+            }
+            recent[moves % _tail] = board;
+            moves += 1;
+            board = Bitboard.tilt(board, policy.move(board, random));
+        }
+        for (int m = Math.max(0, moves - _tail); m < moves; m += 1) {
+            long position = recent[m % _tail];
+            if (isNew(position)) {
+                Side side = searcher.best(position, _horizon);
+                store(position, (float) searcher.value(), side);
+            }
+        }
+    }
+
+    /** Return BOARD with a random tile added as selected for this build,
+     *  using RANDOM. */
+    private long spawn(long board, GameRandom random) {
+        return _spawnIndexed ? Simulator.indexedPiece(board, random)
+            : Simulator.randomPiece(board, random);
+    }
+
+    /** Count BOARD as a position to store, and return true iff it is not
+     *  yet in the table. */
+    private synchronized boolean isNew(long board) {
+        _positions += 1;
+        return !_table.contains(board);
+    }
+
+    /** Add BOARD with VALUE and best move SIDE to the table, unless it is
+     *  there already (having been added by another thread since isNew) or
+     *  the table is full. */
+    private synchronized void store(long board, float value, Side side) {
+        if (_table.full()) {
+            _skipped += 1;
+        } else {
+            _table.put(board, value, side);
+        }
+    }
+
+    /** An exact expectimax search of the expected score of a position,
+     *  with a cache of chance positions as in Expectimax. */
+    private class Searcher {
+
+        /** Return the best move on BOARD, which must have a move that
+         *  changes it, searching DEPTH moves; its value is then available
+         *  from value. */
+        Side best(long board, int depth) {
+            Side result = null;
+            _value = -1;
+            for (Side side : SIDES) {
+                long next = Bitboard.tilt(board, side);
+                if (next != board) {
+                    double v = Bitboard.score(board, side)
+                        + chanceValue(next, depth);
+                    if (v > _value) {
+                        result = side;
+                        _value = v;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Return the value of the move last chosen by best. */
+        double value() {
+            return _value;
+        }
+
+        /** Return the expected score gained in at most DEPTH moves from
+         *  BOARD, on which the player is about to move. */
+        private double maxValue(long board, int depth) {
+            if (depth == 0 || Simulator.gameOver(board, _endless)) {
+                return 0;
+            }
+            double result = 0;
+            for (Side side : SIDES) {
+                long next = Bitboard.tilt(board, side);
+                if (next != board) {
+                    result = Math.max(result, Bitboard.score(board, side)
+                                      + chanceValue(next, depth));
+                }
+            }
+            return result;
+        }
+
+        /** Return the expected score gained in at most DEPTH - 1 further
+         *  moves from BOARD, on which a random tile is about to be
+         *  placed. */
+        private double chanceValue(long board, int depth) {
+            int h = (int) ((board * 0x9E3779B97F4A7C15L)
+                           >>> (64 - Expectimax.CACHE_BITS));
+            if (_cacheKeys[h] == board && _cacheDepths[h] == depth) {
+                return _cacheValues[h];
+            }
+            double total = 0;
+            int empty = 0;
+            for (int k = 0; k < Bitboard.SIZE * Bitboard.SIZE; k += 1) {
+                if (((board >>> (4 * k)) & 0xF) == 0) {
+                    total += Game.LOW_TILE_PROBABILITY
+                        * maxValue(board | (1L << (4 * k)), depth - 1)
+                        + (1 - Game.LOW_TILE_PROBABILITY)
+                        * maxValue(board | (2L << (4 * k)), depth - 1);
+                    empty += 1;
+                }
+            }
+            double result = empty == 0 ? maxValue(board, depth - 1)
+                : total / empty;
+            _cacheKeys[h] = board;
+            _cacheDepths[h] = (byte) depth;
+            _cacheValues[h] = result;
+            return result;
+        }
+
+        /** Value of the move last chosen by best. */
+        private double _value;
+        /** Boards of cached chance positions. */
+        private final long[] _cacheKeys =
+            new long[1 << Expectimax.CACHE_BITS];
+        /** Depths of cached positions. */
+        private final byte[] _cacheDepths =
+            new byte[1 << Expectimax.CACHE_BITS];
+        /** Values of cached positions. */
+        private final double[] _cacheValues =
+            new double[1 << Expectimax.CACHE_BITS];
+    }
+
+    /** A task that builds from games [_from .. _to). */
+    private class Games extends RecursiveAction {
+
+        /** A task for games FROM through TO - 1. */
+        Games(int from, int to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= GRAIN) {
+                Policy policy = _policies.get();
+                Searcher searcher = _searchers.get();
+                for (int k = _from; k < _to; k += 1) {
+                    buildGame(k, policy, searcher);
+                }
+            } else {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new Games(_from, mid), new Games(mid, _to));
+            }
+        }
+
+        /** Range of games to play. */
+        private final int _from, _to;
+    }
+
+    /** The four sides. */
+    private static final Side[] SIDES = Side.values();
+
+    /** Number of games. */
+    private final int _games;
+    /** Number of positions stored from the end of each game. */
+    private final int _tail;
+    /** Search depth of the values. */
+    private final int _horizon;
+    /** Number of threads. */
+    private final int _threads;
+    /** Seed from which the games' seeds are derived. */
+    private final long _seed;
+    /** The Policy of each thread. */
+    private final ThreadLocal<Policy> _policies;
+    /** The Searcher of each thread. */
+    private final ThreadLocal<Searcher> _searchers =
+        ThreadLocal.withInitial(Searcher::new);
+    /** True iff random tiles are placed as by indexedPiece. */
+    private final boolean _spawnIndexed;
+    /** True iff games continue past MAXTILEVALUE. */
+    private final boolean _endless;
+    /** The table being built. */
+    private ValueTable _table;
+    /** Number of positions taken from the ends of games, and number not
+     *  stored because the table was full. */
+    private long _positions, _skipped;
+}
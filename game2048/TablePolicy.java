@@ -0,0 +1,49 @@
+package game2048;
+
+import java.util.Random;
+
+import game2048.Main.Side;
+
+/** A Policy that plays the best move recorded in a ValueTable for each
+ *  position that has an entry, and otherwise the move chosen by another
+ *  Policy.  A lookup reads the mapped table directly, and allocates
+ *  nothing.  Since the table is only read, one may be shared by the
+ *  TablePolicies of several threads.
+ *  @author Rafayel Mkrtchyan
+ */
+class TablePolicy implements Policy {
+
+    /** A policy using TABLE, and FALLBACK for positions not in it. */
+    TablePolicy(ValueTable table, Policy fallback) {
+        _table = table;
+        _fallback = fallback;
+    }
+
+    @Override
+    public Side move(long board, Random random) {
+        Side side = _table.move(board);
+        if (side != null) {
+            _hits += 1;
+            return side;
+        }
+        _misses += 1;
+        return _fallback.move(board, random);
+    }
+
+    @Override
+    public String stats() {
+        String fallback = _fallback.stats();
+        long lookups = _hits + _misses;
+        return String.format("%d table hits in %d moves (%.1f%%)%s",
+                             _hits, lookups,
+                             lookups == 0 ? 0 : 100.0 * _hits / lookups,
+                             fallback == null ? "" : "; " + fallback);
+    }
+
+    /** The table. */
+    private final ValueTable _table;
+    /** The policy for positions not in _table. */
+    private final Policy _fallback;
+    /** Number of moves found and not found in _table. */
+    private long _hits, _misses;
+}
@@ -0,0 +1,31 @@
+package game2048;
+
+import game2048.Main.Side;
+
+/** A way of tilting many packed boards (see Bitboard) toward the same
+ *  side at once.  SwarTilt is always available; VectorTilt, which uses the
+ *  incubating Vector API, is compiled separately (see vector/Makefile),
+ *  and used by best only if it and the jdk.incubator.vector module are
+ *  both present.
+ *  @author Rafayel Mkrtchyan
+ */
+interface TiltKernel {
+
+    /** Set OUT[k] to BOARDS[k] tilted toward SIDE, for 0 <= k < N. */
+    void tilt(long[] boards, long[] out, int n, Side side);
+
+    /** Name of the class of the vector kernel. */
+    String VECTOR_KERNEL = "game2048.VectorTilt";
+
+    /** Return the vector kernel if it can be loaded, and otherwise a
+     *  SwarTilt. */
+    static TiltKernel best() {
+        try {
+            return (TiltKernel) Class.forName(VECTOR_KERNEL)
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return new SwarTilt();
+        }
+    }
+
+}
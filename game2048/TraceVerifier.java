@@ -0,0 +1,287 @@
+package game2048;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import ucb.util.CommandArgs;
+
+import game2048.gui.MappedInput;
+
+/** Checks text traces like those in the testing directory in a single
+ *  JVM: each input file F.in (a log of tiles and keys, as written by
+ *  --log) is supplied, as if with --testing --no-display, to a Main in
+ *  this JVM, and the output of its Game is compared with the expected
+ *  output F.out (as written by --testing), just as testing/tester.py
+ *  compares the output of separate runs of Main.  As there, comment lines
+ *  are ignored and runs of "C" lines count as one.  Both files are
+ *  memory-mapped, and Main parses its input directly from the mapping
+ *  (see MappedInput).  The files are divided among a pool of threads.
+ *  @author Rafayel Mkrtchyan
+ */
+class TraceVerifier {
+
+    /** Suffixes of input and expected output files. */
+    static final String IN_SUFFIX = ".in", OUT_SUFFIX = ".out";
+
+    /** A verifier that uses THREADS threads, for traces of games on
+     *  boards of SIZE rows. */
+    TraceVerifier(int threads, int size) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("need at least one thread");
+        }
+        if (size < Main.SIZE) {
+            throw new IllegalArgumentException("board size must be at "
+                                               + "least " + Main.SIZE);
+        }
+        _threads = threads;
+        _size = size;
+    }
+
+    /** Return the input files designated by PATH: PATH itself, if it is a
+     *  file, or the files in it whose names end with IN_SUFFIX, in order
+     *  of name. */
+    static List<Path> traces(Path path) throws IOException {
+        List<Path> result = new ArrayList<>();
+        if (!Files.isDirectory(path)) {
+            result.add(path);
+        } else {
+            try (Stream<Path> files = Files.list(path)) {
+                files.filter(f -> f.toString().endsWith(IN_SUFFIX))
+                    .forEach(result::add);
+            }
+            Collections.sort(result);
+        }
+        return result;
+    }
+
+    /** Return the expected output file for input file INPUT. */
+    static Path expected(Path input) {
+        String name = input.getFileName().toString();
+        if (name.endsWith(IN_SUFFIX)) {
+            name = name.substring(0, name.length() - IN_SUFFIX.length());
+        }
+        return input.resolveSibling(name + OUT_SUFFIX);
+    }
+
+    /** Verify each of the traces designated by PATH (see traces),
+     *  reporting failures and a summary on OUT.  Return true iff all
+     *  pass. */
+    boolean verifyAll(Path path, PrintStream out) throws IOException {
+        List<Path> inputs = traces(path);
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (Path input : inputs) {
+            tasks.add(() -> {
+                    try {
+                        verify(input);
+                        return null;
+                    } catch (IOException | RuntimeException excp) {
+                        return excp.getMessage();
+                    }
+                });
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        List<Future<String>> results;
+        try {
+            results = pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failures = 0;
+        for (int k = 0; k < inputs.size(); k += 1) {
+            String error;
+            try {
+                error = results.get(k).get();
+            } catch (InterruptedException | ExecutionException excp) {
+                error = excp.toString();
+            }
+            if (error != null) {
+                out.printf("%s: FAILED: %s%n", inputs.get(k), error);
+                failures += 1;
+            }
+        }
+        out.printf("%d traces, %d failed, in %.3f s (%.0f traces/sec)%n",
+                   inputs.size(), failures, seconds,
+                   inputs.size() / seconds);
+        return failures == 0;
+    }
+
+    /** Run Main on trace INPUT, checking its output against the expected
+     *  output (see expected).  Throws an exception describing the first
+     *  discrepancy, if any. */
+    void verify(Path input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CommandArgs options =
+            new CommandArgs(Main.OPTIONS,
+                            new String[] { "--testing", "--no-display",
+                                           "--size=" + _size });
+        Main main = new Main(options, new MappedInput(map(input)), output);
+        try {
+            while (main.play()) {
+                /* No action */
+            }
+        } catch (RuntimeException excp) {
+            throw new IOException(String.format("Main failed: %s", excp));
+        } finally {
+            main.close();
+        }
+        compare(new Lines(ByteBuffer.wrap(output.toByteArray())),
+                new Lines(map(expected(input))));
+    }
+
+    /** Check that the lines of ACTUAL are those of EXPECT, where a run of
+     *  "C" lines counts as one.  Throws an exception describing the first
+     *  difference, if any. */
+    private static void compare(Lines actual, Lines expect)
+        throws IOException {
+        while (true) {
+            boolean more = nextEvent(actual);
+            if (more != nextEvent(expect) || more
+                && !actual.current().equals(expect.current())) {
+                throw new IOException(
+                    String.format("%s line %d: output %s where expected %s",
+                                  OUT_SUFFIX, expect.lineNumber(),
+                                  more ? actual.current() : "(end)",
+                                  expect.atLine() ? expect.current()
+                                  : "(end)"));
+            }
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    /** Advance LINES to its next line, passing over "C" lines that
+     *  follow a "C" line.  Return false if there is none. */
+    private static boolean nextEvent(Lines lines) {
+        boolean cleared = lines.isClear();
+        while (lines.next()) {
+            if (!cleared || !lines.isClear()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the contents of FILE, mapped into memory. */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        }
+    }
+
+    /** A cursor over the non-blank, non-comment lines of a buffer of ASCII
+     *  text. */
+    private static class Lines {
+
+        /** A cursor positioned before the first line of TEXT. */
+        Lines(ByteBuffer text) {
+            _text = text;
+            _limit = text.limit();
+            _end = -1;
+        }
+
+        /** Advance to the next line that is not blank or a comment,
+         *  skipping leading blanks.  Return false if there is none. */
+        boolean next() {
+            _pos = _end + 1;
+            while (_pos < _limit) {
+                _line += 1;
+                _end = _pos;
+                while (_end < _limit && _text.get(_end) != '\n') {
+                    _end += 1;
+                }
+                skipBlanks();
+                if (_pos < _end && _text.get(_pos) != '#') {
+                    return true;
+                }
+                _pos = _end + 1;
+            }
+            _end = _limit;
+            return false;
+        }
+
+        /** Return true iff this cursor is at a line not yet passed by
+         *  next. */
+        boolean atLine() {
+            return _pos < _end;
+        }
+
+        /** Return the number of the current line, counting from 1. */
+        int lineNumber() {
+            return _line;
+        }
+
+        /** Return true iff the current line is "C". */
+        boolean isClear() {
+            return _pos < _end && _text.get(_pos) == 'C'
+                && lineEnd() == _pos + 1;
+        }
+
+        /** Return the current line, less leading and trailing blanks. */
+        String current() {
+            byte[] text = new byte[Math.max(0, lineEnd() - _pos)];
+            for (int k = 0; k < text.length; k += 1) {
+                text[k] = _text.get(_pos + k);
+            }
+            return new String(text, StandardCharsets.US_ASCII);
+        }
+
+        /** Return the end of the current line, less trailing blanks. */
+        private int lineEnd() {
+            int end = _end;
+            while (end > _pos && isBlank(_text.get(end - 1))) {
+                end -= 1;
+            }
+            return end;
+        }
+
+        /** Advance past blanks on the current line. */
+        private void skipBlanks() {
+            while (_pos < _end && isBlank(_text.get(_pos))) {
+                _pos += 1;
+            }
+        }
+
+        /** Return true iff B is a blank (including a carriage return). */
+        private boolean isBlank(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        /** The text. */
+        private final ByteBuffer _text;
+        /** Length of _text. */
+        private final int _limit;
+        /** Position of the next character of the current line, and of its
+         *  end. */
+        private int _pos, _end;
+        /** Number of the current line. */
+        private int _line;
+    }
+
+    /** Number of threads to use. */
+    private final int _threads;
+    /** Number of rows of the boards. */
+    private final int _size;
+}
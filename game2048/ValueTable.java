@@ -0,0 +1,308 @@
+package game2048;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import game2048.Main.Side;
+
+/** A file of exact values of positions, as built by TableBuilder, read and
+ *  written in place through memory mapping.  The table is a hash table
+ *  with open addressing (linear probing) keyed on the canonical packed
+ *  board (see Symmetry.canonical) of each position, so that one entry
+ *  serves all eight symmetric boards.  Since the entries are read
+ *  directly from the mapped file, a lookup neither allocates nor copies
+ *  anything, the table need not fit on the heap, and the operating
+ *  system pages in only the parts used.
+ *
+ *  <p>A file starts with a HEADER_SIZE-byte header: the six ASCII
+ *  characters "2048VT", a version byte, the search depth of the values,
+ *  a byte that is 1 if the values are for endless games and 0 otherwise,
+ *  the base-2 logarithm of the number of slots, six bytes of padding,
+ *  the number of entries as an eight-byte integer, and eight more bytes
+ *  of padding.  The slots follow, each SLOT_SIZE bytes: the canonical
+ *  board (0 in an empty slot, since no position has an empty board), the
+ *  value as a four-byte float, and the ordinal of the best move on the
+ *  canonical board as a four-byte integer.  All integers are most
+ *  significant byte first.  A file is mapped in segments of at most
+ *  2 ** SEGMENT_BITS slots, since a single mapping is limited to 2 GB.
+ *  @author Rafayel Mkrtchyan
+ */
+class ValueTable implements Closeable {
+
+    /** The first bytes of every file. */
+    static final byte[] MAGIC = { '2', '0', '4', '8', 'V', 'T' };
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    /** Size of the header. */
+    static final int HEADER_SIZE = 32;
+
+    /** Size of a slot. */
+    static final int SLOT_SIZE = 16;
+
+    /** Position of the number of entries in the header. */
+    private static final int SIZE_OFFSET = 16;
+
+    /** Log2 of the largest number of slots in one mapping. */
+    private static final int SEGMENT_BITS = 26;
+
+    /** Largest and smallest allowed log2 of the number of slots. */
+    static final int MAX_BITS = 40, MIN_BITS = 4;
+
+    /** Largest fraction of the slots that may hold entries. */
+    static final double MAX_LOAD = 0.75;
+
+    /** The table in FILE, which must exist, mapped for reading only. */
+    ValueTable(Path file) throws IOException {
+        _channel = FileChannel.open(file, StandardOpenOption.READ);
+        _writable = false;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readHeader(header);
+            for (byte b : MAGIC) {
+                if (header.get() != b) {
+                    throw new IOException("not a 2048 value table");
+                }
+            }
+            if (header.get() != VERSION) {
+                throw new IOException("unsupported value table version");
+            }
+            _depth = header.get();
+            _endless = header.get() != 0;
+            _bits = header.get();
+            _size = header.getLong(SIZE_OFFSET);
+            if (_bits < MIN_BITS || _bits > MAX_BITS
+                || _channel.size()
+                   < HEADER_SIZE + ((long) SLOT_SIZE << _bits)) {
+                throw new IOException("value table is truncated or "
+                                      + "corrupt");
+            }
+            _segments = map(FileChannel.MapMode.READ_ONLY);
+        } catch (IOException excp) {
+            _channel.close();
+            throw excp;
+        }
+    }
+
+    /** A new, empty table in FILE, replacing any existing file, with 2 **
+     *  BITS slots, for values searched to DEPTH moves in games that are
+     *  endless iff ENDLESS.  The file is mapped for reading and writing;
+     *  the header is completed by close. */
+    ValueTable(Path file, int bits, int depth, boolean endless)
+        throws IOException {
+        if (bits < MIN_BITS || bits > MAX_BITS) {
+            throw new IllegalArgumentException("table must have 2**"
+                                               + MIN_BITS + " to 2**"
+                                               + MAX_BITS + " slots");
+        }
+        _channel = FileChannel.open(file, StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        _writable = true;
+        _bits = bits;
+        _depth = depth;
+        _endless = endless;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).put((byte) VERSION).put((byte) depth)
+                .put((byte) (endless ? 1 : 0)).put((byte) bits);
+            writeHeader(header);
+            _segments = map(FileChannel.MapMode.READ_WRITE);
+        } catch (IOException excp) {
+            _channel.close();
+            throw excp;
+        }
+    }
+
+    /** Return the slots of the file mapped with MODE, in segments of
+     *  2 ** SEGMENT_BITS slots (or one smaller segment).  Mapping for
+     *  writing extends the file as needed, with zeros. */
+    private MappedByteBuffer[] map(FileChannel.MapMode mode)
+        throws IOException {
+        int segmentBits = Math.min(_bits, SEGMENT_BITS);
+        MappedByteBuffer[] result =
+            new MappedByteBuffer[1 << (_bits - segmentBits)];
+        long length = (long) SLOT_SIZE << segmentBits;
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = _channel.map(mode, HEADER_SIZE + k * length,
+                                     length);
+        }
+        return result;
+    }
+
+    /** Read the header into HEADER, and flip HEADER for reading. */
+    private void readHeader(ByteBuffer header) throws IOException {
+        while (header.hasRemaining()) {
+            if (_channel.read(header, header.position()) < 0) {
+                throw new IOException("value table is truncated");
+            }
+        }
+        header.flip();
+    }
+
+    /** Write all of HEADER, whatever its position, at the start of the
+     *  file. */
+    private void writeHeader(ByteBuffer header) throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            _channel.write(header, header.position());
+        }
+    }
+
+    /** Return the search depth of the values. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return true iff the values are for endless games. */
+    boolean endless() {
+        return _endless;
+    }
+
+    /** Return the number of entries. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of slots. */
+    long capacity() {
+        return 1L << _bits;
+    }
+
+    /** Return true iff no more entries may be added. */
+    boolean full() {
+        return _size >= (long) (MAX_LOAD * capacity());
+    }
+
+    /** Return the value of BOARD, or NaN if it has no entry. */
+    float value(long board) {
+        long slot = find(Symmetry.canonical(board));
+        return slot < 0 ? Float.NaN
+            : segment(slot).getFloat(offset(slot) + Long.BYTES);
+    }
+
+    /** Return the best move on BOARD, or null if it has no entry. */
+    Side move(long board) {
+        int t = Symmetry.canonicalTransform(board);
+        long slot = find(Symmetry.apply(board, t));
+        if (slot < 0) {
+            return null;
+        }
+        int move = segment(slot).getInt(offset(slot) + Long.BYTES
+                                        + Float.BYTES);
+        return Symmetry.original(SIDES[move], t);
+    }
+
+    /** Return true iff BOARD has an entry. */
+    boolean contains(long board) {
+        return find(Symmetry.canonical(board)) >= 0;
+    }
+
+    /** Add an entry giving VALUE and best move MOVE for BOARD, and for the
+     *  boards symmetric to it, unless it already has one.  Return true iff
+     *  an entry was added.  Throws IllegalStateException if the table is
+     *  full. */
+    boolean put(long board, float value, Side move) {
+        if (!_writable) {
+            throw new IllegalStateException("value table is read-only");
+        }
+        int t = Symmetry.canonicalTransform(board);
+        long key = Symmetry.apply(board, t);
+        long mask = capacity() - 1;
+        for (long slot = firstSlot(key); true;
+             slot = (slot + 1) & mask) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            long found = segment.getLong(offset);
+            if (found == key) {
+                return false;
+            } else if (found == 0) {
+                if (full()) {
+                    throw new IllegalStateException("value table is full");
+                }
+                segment.putFloat(offset + Long.BYTES, value);
+                segment.putInt(offset + Long.BYTES + Float.BYTES,
+                               Symmetry.transform(move, t).ordinal());
+                segment.putLong(offset, key);
+                _size += 1;
+                return true;
+            }
+        }
+    }
+
+    /** Return the slot holding canonical board KEY, or -1 if none does. */
+    private long find(long key) {
+        long mask = capacity() - 1;
+        for (long slot = firstSlot(key); true;
+             slot = (slot + 1) & mask) {
+            long found = segment(slot).getLong(offset(slot));
+            if (found == key) {
+                return slot;
+            } else if (found == 0) {
+                return -1;
+            }
+        }
+    }
+
+    /** Return the slot at which the search for KEY starts. */
+    private long firstSlot(long key) {
+        return (key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - _bits);
+    }
+
+    /** Return the mapping that holds SLOT. */
+    private MappedByteBuffer segment(long slot) {
+        return _segments[(int) (slot >>> SEGMENT_BITS)];
+    }
+
+    /** Return the position of SLOT in its mapping. */
+    private static int offset(long slot) {
+        return ((int) slot & ((1 << SEGMENT_BITS) - 1)) * SLOT_SIZE;
+    }
+
+    /** Write the number of entries into the header and all changes to the
+     *  file, if it is writable, and close it.  The mappings stay valid
+     *  until this table is discarded. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (_writable) {
+                for (MappedByteBuffer segment : _segments) {
+                    segment.force();
+                }
+                ByteBuffer size = ByteBuffer.allocate(Long.BYTES);
+                size.putLong(_size).flip();
+                while (size.hasRemaining()) {
+                    _channel.write(size, SIZE_OFFSET + size.position());
+                }
+                _channel.force(true);
+            }
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /** The four sides, indexed by ordinal. */
+    private static final Side[] SIDES = Side.values();
+
+    /** The file. */
+    private final FileChannel _channel;
+    /** True iff the table may be changed. */
+    private final boolean _writable;
+    /** Log2 of the number of slots. */
+    private final int _bits;
+    /** Search depth of the values. */
+    private final int _depth;
+    /** True iff the values are for endless games. */
+    private final boolean _endless;
+    /** The slots, in consecutive mappings of equal size. */
+    private final MappedByteBuffer[] _segments;
+    /** Number of entries. */
+    private long _size;
+}
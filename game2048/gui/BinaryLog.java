@@ -0,0 +1,332 @@
+package game2048.gui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** A compact binary form of the logs written by the --log option: the
+ *  random tiles and keys supplied to a game.
+ *
+ *  <p>A log starts with a 14-byte header: the four ASCII characters
+ *  "2048", a version byte, the number of rows of the board, a byte of
+ *  flags (see INDEXED_SPAWN, ENDLESS, and SPLITMIX), and the eight-byte
+ *  PRNG seed (0 if unknown), most significant byte first.  Each record
+ *  that follows starts with one byte.  If its top bit is 0, the record
+ *  is a random tile: bit 6 is set for a 4 (and clear for a 2), and bits
+ *  0-5 hold the square number, row * rows + column, unless they are
+ *  all ones, in which case the square number follows as a varint.
+ *  Otherwise, the record is a key, whose code (an index into KEYS) is in
+ *  bits 0-6, unless they are all ones, in which case the name of the key
+ *  follows as a varint length and that many bytes of UTF-8.  Varints
+ *  hold 7 bits per byte, least significant first, with the top bit set
+ *  on all but the last byte.
+ *  @author Rafayel Mkrtchyan
+ */
+public class BinaryLog {
+
+    /** The first bytes of every log. */
+    static final byte[] MAGIC = { '2', '0', '4', '8' };
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    /** Conventional suffix of binary log file names. */
+    public static final String SUFFIX = ".2048";
+
+    /** Header flag indicating that the tiles were placed with a single
+     *  draw from the PRNG each (--spawn=indexed). */
+    public static final int INDEXED_SPAWN = 1;
+
+    /** Header flag indicating that reaching 2048 did not end the games
+     *  (--endless). */
+    public static final int ENDLESS = 2;
+
+    /** Header flag indicating that the PRNG was SplitMix64 rather than
+     *  java.util.Random (--rng=splitmix; see GameRandom). */
+    public static final int SPLITMIX = 4;
+
+    /** Names of the keys with single-byte codes. */
+    static final String[] KEYS = {
+        "Up", "Down", "Left", "Right", "New Game", "Quit", "Undo", "Redo"
+    };
+
+    /** Record types returned by Reader.next. */
+    public static final int END = 0, TILE = 1, KEY = 2;
+
+    /** Inline square number or key code indicating that the value follows
+     *  the record's first byte. */
+    private static final int TILE_ESCAPE = 0x3F, KEY_ESCAPE = 0x7F;
+
+    /** Size of I/O buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Return the single-byte code for KEY, or KEY_ESCAPE if it has
+     *  none. */
+    static int keyCode(String key) {
+        for (int k = 0; k < KEYS.length; k += 1) {
+            if (KEYS[k].equals(key)) {
+                return k;
+            }
+        }
+        return KEY_ESCAPE;
+    }
+
+    /** Writes a binary log. */
+    public static class Writer implements Closeable {
+
+        /** A Writer that creates (or replaces) FILE, and writes a header for
+         *  a board with ROWS rows, PRNG seed SEED, and header flags
+         *  FLAGS. */
+        public Writer(Path file, int rows, long seed, int flags)
+            throws IOException {
+            this(FileChannel.open(file, StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.TRUNCATE_EXISTING),
+                 rows, seed, flags);
+        }
+
+        /** A Writer on OUT, otherwise as for Writer(Path, int, long,
+         *  int). */
+        public Writer(WritableByteChannel out, int rows, long seed,
+                      int flags) {
+            _out = out;
+            _rows = rows;
+            _buffer.put(MAGIC).put((byte) VERSION).put((byte) rows)
+                .put((byte) flags).putLong(seed);
+        }
+
+        /** Record a random tile with value VALUE (2 or 4) at ROW and
+         *  COL. */
+        public void tile(int value, int row, int col) {
+            if (value != 2 && value != 4) {
+                throw Game.badArg("bad random tile value: %d", value);
+            }
+            int square = row * _rows + col;
+            int first = (value == 4 ? 0x40 : 0)
+                | Math.min(square, TILE_ESCAPE);
+            reserve(6);
+            _buffer.put((byte) first);
+            if (square >= TILE_ESCAPE) {
+                putVarint(square);
+            }
+        }
+
+        /** Record the key KEY. */
+        public void key(String key) {
+            int code = keyCode(key);
+            reserve(1);
+            _buffer.put((byte) (0x80 | code));
+            if (code == KEY_ESCAPE) {
+                byte[] name = key.getBytes(StandardCharsets.UTF_8);
+                reserve(5 + name.length);
+                putVarint(name.length);
+                _buffer.put(name);
+            }
+        }
+
+        /** Write out everything recorded so far. */
+        public void flush() {
+            _buffer.flip();
+            try {
+                while (_buffer.hasRemaining()) {
+                    _out.write(_buffer);
+                }
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+            _buffer.clear();
+        }
+
+        @Override
+        public void close() {
+            flush();
+            try {
+                _out.close();
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+        }
+
+        /** Ensure that the buffer has room for N more bytes. */
+        private void reserve(int n) {
+            if (_buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        /** Append N to the buffer as a varint. */
+        private void putVarint(int n) {
+            while ((n & ~0x7F) != 0) {
+                _buffer.put((byte) (0x80 | (n & 0x7F)));
+                n >>>= 7;
+            }
+            _buffer.put((byte) n);
+        }
+
+        /** Destination of the log. */
+        private final WritableByteChannel _out;
+        /** Number of rows on the board. */
+        private final int _rows;
+        /** Records not yet written. */
+        private final ByteBuffer _buffer =
+            ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /** Reads a binary log. */
+    public static class Reader implements Closeable {
+
+        /** A Reader for FILE. */
+        public Reader(Path file) throws IOException {
+            this(FileChannel.open(file, StandardOpenOption.READ));
+        }
+
+        /** A Reader for the log on IN, whose header it reads
+         *  immediately. */
+        public Reader(ReadableByteChannel in) throws IOException {
+            _in = in;
+            _buffer.flip();
+            for (byte b : MAGIC) {
+                if (getByte() != b) {
+                    throw new IOException("not a binary 2048 log");
+                }
+            }
+            if (getByte() != VERSION) {
+                throw new IOException("unsupported binary log version");
+            }
+            _rows = getByte();
+            _flags = getByte();
+            long seed = 0;
+            for (int k = 0; k < Long.BYTES; k += 1) {
+                seed = (seed << 8) | getByte();
+            }
+            _seed = seed;
+        }
+
+        /** Return the number of rows of the board. */
+        public int rows() {
+            return _rows;
+        }
+
+        /** Return the PRNG seed, or 0 if unknown. */
+        public long seed() {
+            return _seed;
+        }
+
+        /** Return the header flags. */
+        public int flags() {
+            return _flags;
+        }
+
+        /** Read the next record and return its type: TILE (see value,
+         *  row, and col), KEY (see key), or END at the end of the log. */
+        public int next() throws IOException {
+            if (!_buffer.hasRemaining() && !fill()) {
+                return END;
+            }
+            int first = getByte();
+            if ((first & 0x80) == 0) {
+                int square = first & TILE_ESCAPE;
+                if (square == TILE_ESCAPE) {
+                    square = getVarint();
+                }
+                _value = (first & 0x40) != 0 ? 4 : 2;
+                _row = square / _rows;
+                _col = square % _rows;
+                return TILE;
+            }
+            int code = first & KEY_ESCAPE;
+            if (code != KEY_ESCAPE) {
+                if (code >= KEYS.length) {
+                    throw new IOException("bad key code in binary log");
+                }
+                _key = KEYS[code];
+            } else {
+                byte[] name = new byte[getVarint()];
+                for (int k = 0; k < name.length; k += 1) {
+                    name[k] = (byte) getByte();
+                }
+                _key = new String(name, StandardCharsets.UTF_8);
+            }
+            return KEY;
+        }
+
+        /** Return the value of the last TILE record. */
+        public int value() {
+            return _value;
+        }
+
+        /** Return the row of the last TILE record. */
+        public int row() {
+            return _row;
+        }
+
+        /** Return the column of the last TILE record. */
+        public int col() {
+            return _col;
+        }
+
+        /** Return the key of the last KEY record. */
+        public String key() {
+            return _key;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** Refill the buffer from _in.  Return false if there is no more
+         *  input. */
+        private boolean fill() throws IOException {
+            _buffer.compact();
+            int n;
+            do {
+                n = _in.read(_buffer);
+            } while (n == 0);
+            _buffer.flip();
+            return _buffer.hasRemaining();
+        }
+
+        /** Return the next byte of input as an unsigned value. */
+        private int getByte() throws IOException {
+            if (!_buffer.hasRemaining() && !fill()) {
+                throw new IOException("binary log is truncated");
+            }
+            return _buffer.get() & 0xFF;
+        }
+
+        /** Return the next varint of input. */
+        private int getVarint() throws IOException {
+            int result, shift, b;
+            result = shift = 0;
+            do {
+                b = getByte();
+                result |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        /** Source of the log. */
+        private final ReadableByteChannel _in;
+        /** Unread input. */
+        private final ByteBuffer _buffer =
+            ByteBuffer.allocateDirect(BUFFER_SIZE);
+        /** Header fields. */
+        private final int _rows, _flags;
+        /** PRNG seed from the header. */
+        private final long _seed;
+        /** Fields of the last TILE record. */
+        private int _value, _row, _col;
+        /** Key of the last KEY record. */
+        private String _key;
+    }
+
+}
@@ -2,12 +2,14 @@ package game2048.gui;
 
 import ucb.gui.Pad;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import javax.swing.Timer;
 
 import java.awt.Font;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.FontMetrics;
+import java.awt.Image;
 
 /** A widget that displays a 2048 board.
  *  @author P. N. Hilfinger
@@ -26,12 +28,25 @@ class BoardDisplay extends Pad {
         TILE_SIDE = 100,
         ROW_SIZE = TILE_SEP + TILE_SIDE;
 
-    /** Font used for numbering on tiles with <= 2 digits. */
-    static final Font TILE_FONT2 = new Font("SansSerif", 1, 48);
-    /** Font used for numbering on tiles with 3 digits. */
-    static final Font TILE_FONT3 = new Font("SansSerif", 1, 40);
-    /** Font used for numbering on tiles with 4 digits. */
-    static final Font TILE_FONT4 = new Font("SansSerif", 1, 32);
+    /** Point size of the font used for numbering on tiles with <= 2
+     *  digits, the reduction in size for each further digit, and the
+     *  smallest size used. */
+    static final int
+        TILE_FONT_SIZE = 48,
+        TILE_FONT_STEP = 8,
+        MIN_TILE_FONT_SIZE = 14;
+
+    /** TILE_FONTS[d] is the font used for numbering on tiles with d
+     *  digits. */
+    static final Font[] TILE_FONTS = new Font[11];
+
+    static {
+        for (int d = 0; d < TILE_FONTS.length; d += 1) {
+            int size = TILE_FONT_SIZE - TILE_FONT_STEP * Math.max(0, d - 2);
+            TILE_FONTS[d] =
+                new Font("SansSerif", 1, Math.max(MIN_TILE_FONT_SIZE, size));
+        }
+    }
 
     /** Color for overlay text on board. */
     static final Color OVERLAY_COLOR = new Color(200, 0, 0, 64);
@@ -39,7 +54,7 @@ class BoardDisplay extends Pad {
     /** Font for overlay text on board. */
     static final Font OVERLAY_FONT = new Font("SansSerif", 1, 64);
 
-    /** Wait between animation steps (in milliseconds). */
+    /** Interval between animation frames (in milliseconds). */
     static final int TICK = 16;
 
     /** A graphical representation of a 2048 board with SIZE rows and
@@ -48,6 +63,8 @@ class BoardDisplay extends Pad {
         _size = size;
         _boardSide = size * ROW_SIZE + TILE_SEP;
         setPreferredSize(_boardSide, _boardSide);
+        _timer = new Timer(TICK, e -> tick());
+        _current = _shown = new Change(0);
         clear();
     }
 
@@ -57,17 +74,79 @@ class BoardDisplay extends Pad {
         super.setKeyHandler(event, receiver, funcName);
     }
 
+    /** A change to the display, as requested by the game: some tiles slide
+     *  from their previous positions to new ones, after which the board
+     *  shows a given set of tiles.  Tiles bloom when they first come to
+     *  rest. */
+    private static class Change {
+        /** A change with room for N moving and N shown tiles. */
+        Change(int n) {
+            moving = new Tile[n];
+            from = new int[2 * n];
+            to = new int[2 * n];
+            shown = new Tile[n];
+            at = new int[2 * n];
+        }
+
+        /** Add TILE, moving from its current position to (X, Y). */
+        void move(Tile tile, int x, int y) {
+            moving[moves] = tile;
+            from[2 * moves] = tile.getX();
+            from[2 * moves + 1] = tile.getY();
+            to[2 * moves] = x;
+            to[2 * moves + 1] = y;
+            double dist = Math.max(Math.abs(x - tile.getX()),
+                                   Math.abs(y - tile.getY()));
+            moveTime = Math.max(moveTime, (long) (dist / Tile.MOVE_SPEED));
+            moves += 1;
+        }
+
+        /** Add TILE, shown at its current position after the moves. */
+        void show(Tile tile) {
+            shown[count] = tile;
+            at[2 * count] = tile.getX();
+            at[2 * count + 1] = tile.getY();
+            count += 1;
+        }
+
+        /** The moving tiles are moving[0 .. moves-1].  Tile k moves from
+         *  (from[2k], from[2k+1]) to (to[2k], to[2k+1]). */
+        final Tile[] moving;
+        /** Starting and ending coordinates of the moving tiles. */
+        final int[] from, to;
+        /** Number of moving tiles. */
+        int moves;
+        /** The tiles shown after the moves are shown[0 .. count-1];
+         *  shown[k] is at (at[2k], at[2k+1]). */
+        final Tile[] shown;
+        /** Coordinates of the shown tiles. */
+        final int[] at;
+        /** Number of shown tiles. */
+        int count;
+        /** True iff "GAME OVER" is displayed after the moves. */
+        boolean end;
+        /** Time taken by the moves (nanoseconds). */
+        long moveTime;
+        /** Time (as for System.nanoTime) at which the key that caused the
+         *  change was pressed, or 0 if unknown. */
+        long pressed;
+    }
+
     /** Clear all tiles from the board. */
     synchronized void clear() {
-        _tiles.clear();
-        _end = false;
-        repaint();
+        _shown = new Change(0);
+        enqueue(_shown);
     }
 
     /** Indicate that "GAME OVER" label should be displayed. */
     synchronized void markEnd() {
-        _end = true;
-        repaint();
+        Change change = new Change(_shown.count);
+        for (int k = 0; k < _shown.count; k += 1) {
+            change.show(_shown.shown[k]);
+        }
+        change.end = true;
+        _shown = change;
+        enqueue(change);
     }
 
     /** Return the pixel distance corresponding to A rows or columns. */
@@ -75,26 +154,63 @@ class BoardDisplay extends Pad {
         return TILE_SEP + a * ROW_SIZE;
     }
 
+    /** Return the image of the empty board, compatible with G. */
+    private Image background(Graphics2D g) {
+        if (_background == null) {
+            _background = g.getDeviceConfiguration()
+                .createCompatibleImage(_boardSide, _boardSide);
+            Graphics2D bg = (Graphics2D) _background.getGraphics();
+            bg.setColor(EMPTY_SQUARE_COLOR);
+            bg.fillRect(0, 0, _boardSide, _boardSide);
+            bg.setColor(BAR_COLOR);
+            for (int k = 0; k <= _boardSide; k += ROW_SIZE) {
+                bg.fillRect(0, k, _boardSide, TILE_SEP);
+                bg.fillRect(k, 0, TILE_SEP, _boardSide);
+            }
+            bg.dispose();
+        }
+        return _background;
+    }
+
     @Override
     public synchronized void paintComponent(Graphics2D g) {
-        g.setColor(EMPTY_SQUARE_COLOR);
-        g.fillRect(0, 0, _boardSide, _boardSide);
-        g.setColor(BAR_COLOR);
-        for (int k = 0; k <= _boardSide; k += ROW_SIZE) {
-            g.fillRect(0, k, _boardSide, TILE_SEP);
-            g.fillRect(k, 0, TILE_SEP, _boardSide);
-        }
-        for (Tile tile : _tiles) {
-            tile.render(g);
+        g.drawImage(background(g), 0, 0, null);
+        Change change = _current;
+        long now = System.nanoTime(), t = now - _start;
+        if (t < change.moveTime) {
+            double dist = t * Tile.MOVE_SPEED;
+            for (int k = 0; k < change.moves; k += 1) {
+                change.moving[k].render(g, approach(change.from[2 * k],
+                                                    change.to[2 * k], dist),
+                                        approach(change.from[2 * k + 1],
+                                                 change.to[2 * k + 1], dist),
+                                        0);
+            }
+        } else {
+            for (int k = 0; k < change.count; k += 1) {
+                Tile tile = change.shown[k];
+                tile.render(g, change.at[2 * k], change.at[2 * k + 1],
+                            tile.bloomSize(now));
+            }
+            if (change.end) {
+                g.setFont(OVERLAY_FONT);
+                FontMetrics metrics = g.getFontMetrics();
+                g.setColor(OVERLAY_COLOR);
+                g.drawString("GAME OVER",
+                             (_boardSide
+                              - metrics.stringWidth("GAME OVER")) / 2,
+                             (2 * _boardSide + metrics.getMaxAscent()) / 4);
+            }
         }
-        if (_end) {
-            g.setFont(OVERLAY_FONT);
-            FontMetrics metrics = g.getFontMetrics();
-            g.setColor(OVERLAY_COLOR);
-            g.drawString("GAME OVER",
-                         (_boardSide
-                          - metrics.stringWidth("GAME OVER")) / 2,
-                         (2 * _boardSide + metrics.getMaxAscent()) / 4);
+    }
+
+    /** Return the coordinate DIST pixels from X0 toward X1, but no farther
+     *  than X1. */
+    private static int approach(int x0, int x1, double dist) {
+        if (x0 < x1) {
+            return (int) Math.rint(Math.min(x1, x0 + dist));
+        } else {
+            return (int) Math.rint(Math.max(x1, x0 - dist));
         }
     }
 
@@ -102,56 +218,93 @@ class BoardDisplay extends Pad {
      *  being the tile at (r, c), or null if there is no tile
      *  there), TILES2 represents the state of tiles that are to be
      *  merged into existing tiles, and NEXTTILES represents the desired
-     *  resulting state, animate the depicted moves and update _tiles
-     *  accordingly. */
+     *  resulting state, queue an animation of the depicted moves and
+     *  update the tiles' positions accordingly.  Does not wait for the
+     *  animation, which the display's timer plays on the event-dispatch
+     *  thread.  Unless ANIMATE, the tiles jump to their new positions.
+     *  PRESSED is the time (as for System.nanoTime) at which the key that
+     *  caused the moves was pressed, or 0 if unknown. */
     public synchronized void displayMoves(Tile[][] tiles,
                                           Tile[][] tiles2,
-                                          Tile[][] nextTiles) {
-        boolean changing;
-        do {
-            _tiles.clear();
-            changing = false;
-            for (int r = 0; r < _size; r += 1) {
-                for (int c = 0; c < _size; c += 1) {
-                    boolean change;
-                    change = false;
-                    Tile tile = tiles[r][c];
-                    if (tile == null) {
-                        continue;
-                    }
-                    Tile tile2 = tiles2[r][c];
-                    double xDest = toCoord(c), yDest = toCoord(r);
-                    if (tile.tick(xDest, yDest)) {
-                        change = true;
-                        _tiles.add(tile);
-                    }
-                    if (tile2 != null) {
-                        if (tile2.tick(xDest, yDest)) {
-                            change = true;
-                        }
-                    }
-                    if (change) {
-                        _tiles.add(tile);
-                        if (tile2 != null) {
-                            _tiles.add(tile2);
-                        }
-                    }
-                    if (!change) {
-                        Tile next = nextTiles[r][c];
-                        next.setPosition(r, c);
-                        _tiles.add(next);
-                        change = next.tick(xDest, yDest);
-                    }
-                    changing |= change;
+                                          Tile[][] nextTiles,
+                                          boolean animate, long pressed) {
+        Change change = new Change(2 * _size * _size);
+        for (int r = 0; r < _size; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
+                int x = toCoord(c), y = toCoord(r);
+                if (tiles[r][c] != null) {
+                    change.move(tiles[r][c], x, y);
+                    tiles[r][c].setPosition(r, c);
+                }
+                if (tiles2[r][c] != null) {
+                    change.move(tiles2[r][c], x, y);
+                    tiles2[r][c].setPosition(r, c);
+                }
+                Tile next = nextTiles[r][c];
+                if (next != null) {
+                    next.setPosition(r, c);
+                    change.show(next);
                 }
             }
-            repaint();
-            try {
-                wait(TICK);
-            } catch (InterruptedException excp) {
-                assert false : "Internal error: unexpected interrupt";
+        }
+        if (!animate) {
+            change.moveTime = 0;
+        }
+        change.pressed = pressed;
+        _shown = change;
+        enqueue(change);
+    }
+
+    /** Add CHANGE to the changes waiting to be displayed, and make sure
+     *  that the timer is running. */
+    private void enqueue(Change change) {
+        _pending.add(change);
+        _timer.start();
+    }
+
+    /** Advance the animation for the current time, and repaint.  Called on
+     *  the event-dispatch thread by the timer.  The next change starts as
+     *  soon as the moves of the current one are done, and a change whose
+     *  moves are still in progress is cut short when another is waiting
+     *  behind the next one, so that the display keeps up with the game.
+     *  Stops the timer when there is nothing left to animate. */
+    private synchronized void tick() {
+        long now = System.nanoTime();
+        while (!_pending.isEmpty()
+               && (now - _start >= _current.moveTime
+                   || _pending.size() > 1)) {
+            _current = _pending.remove();
+            _start = now;
+            if (_current.pressed != 0) {
+                long latency = now - _current.pressed;
+                _latencyTotal += latency;
+                _latencyMax = Math.max(_latencyMax, latency);
             }
-        } while (changing);
+        }
+        if (now - _start >= _current.moveTime) {
+            for (int k = 0; k < _current.count; k += 1) {
+                if (_current.shown[k].appear(now)) {
+                    _bloomEnd = now + Tile.BLOOM_TIME;
+                }
+            }
+        }
+        repaint();
+        if (_pending.isEmpty() && now - _start >= _current.moveTime
+            && now >= _bloomEnd) {
+            _timer.stop();
+        }
+    }
+
+    /** Return the total of the times (nanoseconds) from key presses to
+     *  the start of the display of the changes they caused. */
+    synchronized long latencyTotal() {
+        return _latencyTotal;
+    }
+
+    /** Return the largest time (nanoseconds) from a key press to the start
+     *  of the display of the change it caused. */
+    synchronized long latencyMax() {
+        return _latencyMax;
     }
 
     /** Convenience method that returns an IllegalArgument exception whose
@@ -160,14 +313,29 @@ class BoardDisplay extends Pad {
         return new IllegalArgumentException(String.format(msg, args));
     }
 
-    /** A list of Tiles currently being displayed. */
-    private final ArrayList<Tile> _tiles = new ArrayList<>();
-
     /** Number of rows and of columns. */
     private final int _size;
 
     /** Length (in pixels) of the side of the board. */
     private int _boardSide;
-    /** True iff "GAME OVER" message is being displayed. */
-    private boolean _end;
+    /** Image of the empty board, or null if not yet drawn. */
+    private Image _background;
+
+    /** Drives the animation while there are changes to display. */
+    private final Timer _timer;
+    /** Changes queued by the game and not yet displayed. */
+    private final ArrayDeque<Change> _pending = new ArrayDeque<>();
+    /** The change being displayed. */
+    private Change _current;
+    /** Time (as for System.nanoTime) at which _current started. */
+    private long _start;
+    /** Time at which the last blooming tile stops blooming. */
+    private long _bloomEnd;
+    /** The most recently queued change, which gives the tiles that the
+     *  game has most recently asked to be shown. */
+    private Change _shown;
+
+    /** Total and maximum of the latencies (nanoseconds) of the changes
+     *  displayed whose key press times are known. */
+    private long _latencyTotal, _latencyMax;
 }
@@ -0,0 +1,133 @@
+package game2048.gui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+
+/** An OutputSink that collects its text as bytes in a fixed buffer,
+ *  converting numbers itself rather than through a Formatter, and writes
+ *  the buffer to an OutputStream when it fills or is flushed.  Non-ASCII
+ *  text is encoded in the default charset, as by System.out.
+ *  @author Rafayel Mkrtchyan
+ */
+class BufferedSink implements OutputSink {
+
+    /** Default size of the buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Line separator, as written by %n. */
+    private static final byte[] NEWLINE =
+        System.lineSeparator().getBytes(Charset.defaultCharset());
+
+    /** Maximum number of characters in the decimal form of an int. */
+    private static final int MAX_DIGITS = 11;
+
+    /** A sink writing to OUT through a buffer of BUFFER_SIZE bytes. */
+    BufferedSink(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    /** A sink writing to OUT through a buffer of SIZE bytes. */
+    BufferedSink(OutputStream out, int size) {
+        if (size < MAX_DIGITS || size < NEWLINE.length) {
+            throw new IllegalArgumentException("buffer too small");
+        }
+        _out = out;
+        _buffer = new byte[size];
+    }
+
+    @Override
+    public OutputSink print(char c) {
+        reserve(1);
+        _buffer[_size] = (byte) c;
+        _size += 1;
+        return this;
+    }
+
+    @Override
+    public OutputSink print(int n) {
+        reserve(MAX_DIGITS);
+        if (n < 0) {
+            if (n == Integer.MIN_VALUE) {
+                return print(Integer.toString(n));
+            }
+            _buffer[_size] = '-';
+            _size += 1;
+            n = -n;
+        }
+        int end = _size + digits(n);
+        _size = end;
+        do {
+            end -= 1;
+            _buffer[end] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        return this;
+    }
+
+    @Override
+    public OutputSink print(String text) {
+        int len = text.length();
+        for (int k = 0; k < len; k += 1) {
+            if (text.charAt(k) >= 0x80) {
+                byte[] bytes = text.getBytes(Charset.defaultCharset());
+                for (byte b : bytes) {
+                    reserve(1);
+                    _buffer[_size] = b;
+                    _size += 1;
+                }
+                return this;
+            }
+        }
+        for (int k = 0; k < len; k += 1) {
+            reserve(1);
+            _buffer[_size] = (byte) text.charAt(k);
+            _size += 1;
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink println() {
+        reserve(NEWLINE.length);
+        System.arraycopy(NEWLINE, 0, _buffer, _size, NEWLINE.length);
+        _size += NEWLINE.length;
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        try {
+            _out.write(_buffer, 0, _size);
+            _out.flush();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+        _size = 0;
+    }
+
+    /** Ensure that the buffer has room for N more bytes. */
+    private void reserve(int n) {
+        if (_size + n > _buffer.length) {
+            flush();
+        }
+    }
+
+    /** Return the number of decimal digits in N >= 0. */
+    private static int digits(int n) {
+        int result = 1;
+        while (n >= 10) {
+            n /= 10;
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Destination of the output. */
+    private final OutputStream _out;
+    /** Output not yet written is _buffer[0 .. _size-1]. */
+    private final byte[] _buffer;
+    /** Number of bytes in _buffer. */
+    private int _size;
+}
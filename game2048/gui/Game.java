@@ -1,15 +1,14 @@
 package game2048.gui;
 
-import java.util.Random;
-import java.util.Scanner;
-import java.util.InputMismatchException;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 /** The input/output and GUI controller for play of a game of 2048.
  *  @author P. N. Hilfinger. */
 public class Game {
 
     /** Probability of choosing 2 as random tile (as opposed to 4). */
-    static final double LOW_TILE_PROBABILITY = 0.9;
+    public static final double LOW_TILE_PROBABILITY = 0.9;
 
     /** A new ROWS x ROWS Game whose window title is TITLE.  SEED is a seed for
      *  the PRNG, or 0 to indicate random seeding.  LOG is true iff all keys
@@ -19,38 +18,65 @@ public class Game {
      *  than user input. */
     public Game(String title, int rows, long seed,
                 boolean log, boolean graphic, boolean testing) {
+        this(title, rows, GameRandom.create(GameRandom.JAVA, seed), log,
+             graphic, testing);
+    }
+
+    /** As for Game(TITLE, ROWS, SEED, LOG, GRAPHIC, TESTING), but drawing
+     *  random tiles and keys from RANDOM. */
+    public Game(String title, int rows, GameRandom random,
+                boolean log, boolean graphic, boolean testing) {
+        this(title, rows, random, log, graphic,
+             testing ? new ScannerInput(System.in) : null, System.out);
+    }
+
+    /** As for Game(TITLE, ROWS, RANDOM, LOG, GRAPHIC, TESTING), but
+     *  taking key pressings and random tiles from INPUT, if it is not null
+     *  (and from user input otherwise), and writing the log and testing
+     *  output to OUTPUT rather than the standard output. */
+    public Game(String title, int rows, GameRandom random,
+                boolean log, boolean graphic, GameInput input,
+                OutputStream output) {
         if (rows < 4) {
             throw new IllegalArgumentException("rows must be >= 4");
         }
         _rows = rows;
-        if (seed == 0) {
-            _random = new Random();
-        } else {
-            _random = new Random(seed);
-        }
+        _random = random;
         _log = log;
         _graphic = graphic;
-        _testing = testing;
+        _testing = input != null;
 
         if (graphic) {
             _display = new GameDisplay(title, rows);
         }
-        if (testing) {
-            _testInput = new Scanner(System.in);
-        }
+        _testInput = input;
+        _out = new BufferedSink(output);
 
+        _tiles = new Tile[_rows][_rows];
+        _tiles2 = new Tile[_rows][_rows];
+        _nextTiles = new Tile[_rows][_rows];
+        _pool = new Tile[2 * _rows * _rows];
         clear();
     }
 
     /** Clear and reset the current state to an empty board. */
     public void clear() {
-        _tiles = new Tile[_rows][_rows];
-        _tiles2 = new Tile[_rows][_rows];
-        _nextTiles = new Tile[_rows][_rows];
+        for (int r = 0; r < _rows; r += 1) {
+            for (int c = 0; c < _rows; c += 1) {
+                release(_tiles[r][c]);
+                release(_tiles2[r][c]);
+                if (_nextTiles[r][c] != _tiles[r][c]) {
+                    release(_nextTiles[r][c]);
+                }
+            }
+            Arrays.fill(_tiles[r], null);
+            Arrays.fill(_tiles2[r], null);
+            Arrays.fill(_nextTiles[r], null);
+        }
         _moves = 0;
 
         if (_testing) {
-            System.out.printf("C%n");
+            _out.print('C').println();
         }
         if (_graphic) {
             _display.clear();
@@ -66,17 +92,16 @@ public class Game {
             throw badArg("square at (%d, %d) is already occupied", row, col);
         }
 
-        _tiles[row][col] = new Tile(value);
+        _tiles[row][col] = newTile(value);
         _tiles[row][col].setPosition(row, col);
 
         if (_testing) {
-            System.out.printf("A %d %d %d%n", value, row, col);
+            _out.print("A ").print(value).print(' ').print(row)
+                .print(' ').print(col).println();
         }
         if (_graphic) {
             _display.displayMoves(_tiles, _tiles2, _tiles);
         }
-        _tiles2 = new Tile[_rows][_rows];
-        _nextTiles = new Tile[_rows][_rows];
     }
 
     /** Move a tile whose value is VALUE from (ROW, COL) to (NEWROW, NEWCOL).
@@ -127,7 +152,7 @@ public class Game {
         _moves += 1;
         _tiles[row][col] = null;
         _tiles2[newRow][newCol] = tile;
-        _nextTiles[newRow][newCol] = new Tile(newValue);
+        _nextTiles[newRow][newCol] = newTile(newValue);
     }
 
     /** Animate and complete all pending moves. Has no effect (and logs no
@@ -144,23 +169,55 @@ public class Game {
             }
         }
         if (_testing) {
-            System.out.printf("D %d %d", _score, _maxScore);
+            _out.print("D ").print(_score).print(' ').print(_maxScore);
             for (int r = 0; r < _rows; r += 1) {
                 for (int c = 0; c < _rows; c += 1) {
                     Tile tile = _nextTiles[r][c];
-                    System.out.printf(" %d",
-                                      tile == null ? 0 : tile.getValue());
+                    _out.print(' ').print(tile == null ? 0 : tile.getValue());
                 }
             }
-            System.out.println();
+            _out.println();
         }
         if (_graphic) {
             _display.displayMoves(_tiles, _tiles2, _nextTiles);
         }
         _moves = 0;
+        Tile[][] old = _tiles;
         _tiles = _nextTiles;
-        _tiles2 = new Tile[_rows][_rows];
-        _nextTiles = new Tile[_rows][_rows];
+        _nextTiles = old;
+        for (int r = 0; r < _rows; r += 1) {
+            for (int c = 0; c < _rows; c += 1) {
+                if (_tiles2[r][c] != null) {
+                    release(_tiles2[r][c]);
+                    release(old[r][c]);
+                    _tiles2[r][c] = null;
+                }
+                old[r][c] = null;
+            }
+        }
+    }
+
+    /** Return a Tile showing VALUE, reusing a released one if
+     *  possible. */
+    private Tile newTile(int value) {
+        if (_poolSize == 0) {
+            return new Tile(value);
+        }
+        _poolSize -= 1;
+        Tile tile = _pool[_poolSize];
+        _pool[_poolSize] = null;
+        tile.reset(value);
+        return tile;
+    }
+
+    /** Make TILE, which is no longer on the board, available to newTile.
+     *  Has no effect if TILE is null or is displayed, since the display may
+     *  still refer to it. */
+    private void release(Tile tile) {
+        if (tile != null && !_graphic && _poolSize < _pool.length) {
+            _pool[_poolSize] = tile;
+            _poolSize += 1;
+        }
     }
 
     /** Display SCORE as the current score and MAXSCORE as the current
@@ -176,7 +233,8 @@ public class Game {
     /** Indicate (and possibly log) end of game. */
     public void endGame() {
         if (_testing) {
-            System.out.printf("E %d %d%n", _score, _maxScore);
+            _out.print("E ").print(_score).print(' ').print(_maxScore)
+                .println();
         }
         if (_graphic) {
             _display.markEnd();
@@ -186,68 +244,190 @@ public class Game {
 
     /** Generate the specs for a random tile, ignoring current board contents.
      *  Return a triple { V, R, C }, giving the tile value (either 2 or 4),
-     *  row, and column. */
+     *  row, and column.  The same array is returned by each call to this
+     *  method and to getRandomTile(int[], int). */
     public int[] getRandomTile() {
-        int[] result;
+        int[] result = _randomTile;
         if (_testing) {
-            skipComments();
-            _testInput.next("T");
-            result = new int[] { _testInput.nextInt(), _testInput.nextInt(),
-                                 _testInput.nextInt() };
+            awaitInput();
+            _testInput.readTile(result);
         } else {
-            int value = 2 * (1 + (int) (_random.nextDouble()
-                                        / LOW_TILE_PROBABILITY));
-            result = new int[] { value, _random.nextInt(_rows),
-                                 _random.nextInt(_rows) };
+            int tile = _random.nextTile(_rows);
+            result[0] = GameRandom.tileValue(tile);
+            result[1] = GameRandom.tileRow(tile);
+            result[2] = GameRandom.tileColumn(tile);
         }
-        if (_log) {
-            System.out.printf("T %d %d %d%n", result[0], result[1], result[2]);
+        logTile(result);
+        return result;
+    }
+
+    /** Generate the specs for a random tile on one of the COUNT squares
+     *  FREE[0 .. COUNT-1], where square number k is at row k / ROWS and
+     *  column k % ROWS, and ROWS is the number of rows.  Unlike
+     *  getRandomTile(), uses a single draw from the PRNG to choose the
+     *  square.  Otherwise (in particular, when taking input from standard
+     *  input) as for getRandomTile(). */
+    public int[] getRandomTile(int[] free, int count) {
+        if (_testing) {
+            return getRandomTile();
         }
+        int[] result = _randomTile;
+        result[0] = 2 * (1 + (int) (_random.nextDouble()
+                                    / LOW_TILE_PROBABILITY));
+        int square = free[_random.nextInt(count)];
+        result[1] = square / _rows;
+        result[2] = square % _rows;
+        logTile(result);
         return result;
     }
 
+    /** Return the state of the PRNG that generates random tiles and keys,
+     *  suitable for setRandomState. */
+    public long randomState() {
+        return _random.state();
+    }
+
+    /** Restore the PRNG to STATE, as returned by an earlier call to
+     *  randomState, so that it repeats the tiles and keys it generated
+     *  after that call. */
+    public void setRandomState(long state) {
+        _random.setState(state);
+    }
+
     /** Strings representing the four arrow keys. */
     private static final String[] ARROW_KEYS = {
         "Up", "Down", "Left", "Right"
     };
 
-    /** Return (and log if _log) a random arrow key. */
+    /** Return (and log) a random arrow key. */
     public String readRandomKey() {
         String key = ARROW_KEYS[_random.nextInt(4)];
-        if (_log) {
-            System.out.printf("K%s%n", key);
-        }
+        logKey(key);
+        return key;
+    }
+
+    /** Return (and log) KEY, chosen by an automated player in place
+     *  of a key input from the user. */
+    public String playKey(String key) {
+        logKey(key);
         return key;
     }
 
-    /** Return (and log if _log) a key input from the user. If _testing,
-     *  takes input instead from standard input. */
+    /** Return (and log) a key input from the user. If _testing,
+     *  takes input instead from the testing input. */
     public String readKey() {
         String key;
         if (_testing) {
-            skipComments();
-            if (!_testInput.hasNext()) {
+            awaitInput();
+            key = _testInput.readKey();
+            if (key == null) {
                 return "Quit";
-            } else if (!_testInput.hasNext("K.*")) {
-                throw new InputMismatchException("next input is not key");
             }
-            _testInput.findWithinHorizon("\\s*K(.*)", 0);
-            key = _testInput.match().group(1);
         } else if (_graphic) {
+            _out.flush();
             key = _display.readKey();
         } else {
             throw new IllegalStateException("Game has no input source");
         }
+        logKey(key);
+        return key;
+    }
+
+    /** Iff ON, and the game is displayed, show moves made while more keys
+     *  are waiting without animating them. */
+    public void setFastForward(boolean on) {
+        if (_graphic) {
+            _display.setFastForward(on);
+        }
+    }
+
+    /** Return the number of keys read from the display.  This and the
+     *  following statistics of the display's keys are 0 if there is no
+     *  display. */
+    public long keysRead() {
+        return _graphic ? _display.keysRead() : 0;
+    }
+
+    /** Return the number of keys dropped by the display because too many
+     *  were waiting. */
+    public long droppedKeys() {
+        return _graphic ? _display.droppedKeys() : 0;
+    }
+
+    /** Return the number of moves shown without animation because more
+     *  keys were waiting (see setFastForward). */
+    public long coalescedKeys() {
+        return _graphic ? _display.coalescedKeys() : 0;
+    }
+
+    /** Return the total of the numbers of keys waiting (including the one
+     *  read) when each key was read from the display. */
+    public long keyQueueDepth() {
+        return _graphic ? _display.keyQueueDepth() : 0;
+    }
+
+    /** Return the largest number of keys waiting when a key was read
+     *  from the display. */
+    public long maxKeyQueueDepth() {
+        return _graphic ? _display.maxKeyQueueDepth() : 0;
+    }
+
+    /** Return the total of the times (nanoseconds) from key presses to the
+     *  start of the display of the moves they caused. */
+    public long keyLatency() {
+        return _graphic ? _display.keyLatency() : 0;
+    }
+
+    /** Return the largest time (nanoseconds) from a key press to the start
+     *  of the display of the move it caused. */
+    public long maxKeyLatency() {
+        return _graphic ? _display.maxKeyLatency() : 0;
+    }
+
+    /** Record the random tile TILE, a triple { V, R, C } as returned by
+     *  getRandomTile, in the logs. */
+    private void logTile(int[] tile) {
+        if (_log) {
+            _out.print("T ").print(tile[0]).print(' ').print(tile[1])
+                .print(' ').print(tile[2]).println();
+        }
+        if (_binaryLog != null) {
+            _binaryLog.tile(tile[0], tile[1], tile[2]);
+        }
+    }
+
+    /** Record KEY in the logs. */
+    private void logKey(String key) {
         if (_log) {
-            System.out.printf("K%s%n", key);
+            _out.print('K').print(key).println();
         }
-        return key;
+        if (_binaryLog != null) {
+            _binaryLog.key(key);
+        }
+    }
+
+    /** Also record all keys and random tiles in LOG, replacing any
+     *  previous binary log. */
+    public void setBinaryLog(BinaryLog.Writer log) {
+        _binaryLog = log;
+    }
+
+    /** Finish all output, including any binary log. */
+    public void close() {
+        if (_binaryLog != null) {
+            _binaryLog.close();
+            _binaryLog = null;
+        }
+        _out.flush();
     }
 
-    /** Skip over any comment lines in input file. */
-    private void skipComments() {
-        while (_testInput.hasNext("#.*")) {
-            _testInput.skip("\\s*#.*");
+    /** Deliver all output so far if reading _testInput may wait for more
+     *  input, so that whoever supplies it sees the responses to what it
+     *  has already sent.  Otherwise, the output is held, to be written in
+     *  batches. */
+    private void awaitInput() {
+        if (!_testInput.ready()) {
+            _out.flush();
         }
     }
 
@@ -271,6 +451,12 @@ public class Game {
     private Tile[][] _nextTiles;
     /** Number of pending moves to be made by displayMoves. */
     private int _moves;
+    /** Tiles no longer in use are _pool[0 .. _poolSize-1]. */
+    private Tile[] _pool;
+    /** Number of tiles in _pool. */
+    private int _poolSize;
+    /** The result of getRandomTile. */
+    private final int[] _randomTile = new int[3];
 
     /** Score of current game. */
     private int _score;
@@ -279,13 +465,17 @@ public class Game {
 
     /** True if logging input. */
     private boolean _log = false;
+    /** Binary log of input, or null. */
+    private BinaryLog.Writer _binaryLog;
     /** True iff displaying GUI. */
     private boolean _graphic = true;
-    /** True iff using standard input rather than user input from GUI. */
+    /** True iff using _testInput rather than user input from GUI. */
     private boolean _testing = false;
     /** PRNG for generating random tiles or keys. */
-    private final Random _random;
-    /** Input source from standard input. */
-    private Scanner _testInput;
+    private final GameRandom _random;
+    /** Input source for testing (by default, the standard input). */
+    private GameInput _testInput;
+    /** Destination of logging and testing output (standard output). */
+    private final OutputSink _out;
 
 }
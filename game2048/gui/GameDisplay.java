@@ -1,7 +1,6 @@
 package game2048.gui;
 
 import java.awt.event.KeyEvent;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import ucb.gui.TopLevel;
 import ucb.gui.LayoutSpec;
@@ -11,14 +10,30 @@ import ucb.gui.LayoutSpec;
  */
 class GameDisplay extends TopLevel {
 
+    /** Maximum number of key presses waiting to be read. */
+    static final int KEY_QUEUE_SIZE = 16;
+
+    /** Codes (as for KeyQueue) of the keys and buttons. */
+    private static final int
+        UP = BinaryLog.keyCode("Up"),
+        DOWN = BinaryLog.keyCode("Down"),
+        LEFT = BinaryLog.keyCode("Left"),
+        RIGHT = BinaryLog.keyCode("Right"),
+        NEW_GAME = BinaryLog.keyCode("New Game"),
+        QUIT = BinaryLog.keyCode("Quit"),
+        UNDO = BinaryLog.keyCode("Undo"),
+        REDO = BinaryLog.keyCode("Redo");
+
     /** A new window with given TITLE and a board with ROWS tiles on a side. */
     GameDisplay(String title, int rows) {
         super(title, true);
         _board = new BoardDisplay(rows);
         addLabel("", "Score", new LayoutSpec("y", 1));
         addButton("New Game", "newGame", new LayoutSpec("y", 1));
+        addButton("Undo", "undo", new LayoutSpec("y", 1));
+        addButton("Redo", "redo", new LayoutSpec("y", 1));
         addButton("Quit", "quit", new LayoutSpec("y", 1));
-        add(_board, new LayoutSpec("y", 0, "width", 3));
+        add(_board, new LayoutSpec("y", 0, "width", 5));
         _board.requestFocusInWindow();
         _board.setKeyHandler("keypress", this, "keyPressed");
         setPreferredFocus(_board);
@@ -28,13 +43,25 @@ class GameDisplay extends TopLevel {
 
     /** Response to "Quit" button click. */
     public void quit(String dummy) {
-        _pendingKeys.offer("Quit");
+        _keys.offer(QUIT);
         _board.requestFocusInWindow();
     }
 
     /** Response to "New Game" button click. */
     public void newGame(String dummy) {
-        _pendingKeys.offer("New Game");
+        _keys.offer(NEW_GAME);
+        _board.requestFocusInWindow();
+    }
+
+    /** Response to "Undo" button click. */
+    public void undo(String dummy) {
+        _keys.offer(UNDO);
+        _board.requestFocusInWindow();
+    }
+
+    /** Response to "Redo" button click. */
+    public void redo(String dummy) {
+        _keys.offer(REDO);
         _board.requestFocusInWindow();
     }
 
@@ -48,25 +75,93 @@ class GameDisplay extends TopLevel {
      *  the corresponding tile inn TILES[r][c], and that NEXTTILES[r][c]
      *  contain the tiles that will result (with new tiles created for merges),
      *  animate the display of the necessary moves and update the board state.
-     *  The tiles themselves contain their actual coordinates on the board. */
+     *  The tiles themselves contain their actual coordinates on the board.
+     *  When fast-forwarding, the moves are shown at once, without
+     *  animation, if more keys are already waiting. */
     public void displayMoves(Tile[][] tiles,
                              Tile[][] tiles2,
                              Tile[][] nextTiles) {
-        _board.displayMoves(tiles, tiles2, nextTiles);
+        boolean animate = !_fastForward || _keys.size() == 0;
+        if (!animate && _keyTime != 0) {
+            _coalesced += 1;
+        }
+        _board.displayMoves(tiles, tiles2, nextTiles, animate, _keyTime);
+        _keyTime = 0;
     }
 
-    /** Respond to the user pressing key E. */
+    /** Respond to the user pressing key E.  Keys other than the arrows
+     *  are ignored. */
     public void keyPressed(KeyEvent e) {
-        _pendingKeys.offer(e.getKeyText(e.getKeyCode()));
+        switch (e.getKeyCode()) {
+        case KeyEvent.VK_UP: case KeyEvent.VK_KP_UP:
+            _keys.offer(UP);
+            break;
+        case KeyEvent.VK_DOWN: case KeyEvent.VK_KP_DOWN:
+            _keys.offer(DOWN);
+            break;
+        case KeyEvent.VK_LEFT: case KeyEvent.VK_KP_LEFT:
+            _keys.offer(LEFT);
+            break;
+        case KeyEvent.VK_RIGHT: case KeyEvent.VK_KP_RIGHT:
+            _keys.offer(RIGHT);
+            break;
+        default:
+            break;
+        }
     }
 
     /** Return the next key press, waiting for it as necessary. */
     String readKey() {
-        try {
-            return _pendingKeys.take();
-        } catch (InterruptedException excp) {
-            throw new Error("unexpected interrupt");
-        }
+        String key = BinaryLog.KEYS[_keys.take()];
+        _keyTime = _keys.time();
+        return key;
+    }
+
+    /** Iff ON, show moves made while more keys are waiting without
+     *  animating them, so that the display catches up with a burst of
+     *  key presses. */
+    void setFastForward(boolean on) {
+        _fastForward = on;
+    }
+
+    /** Return the number of keys read. */
+    long keysRead() {
+        return _keys.taken();
+    }
+
+    /** Return the number of keys dropped because too many were
+     *  waiting. */
+    long droppedKeys() {
+        return _keys.dropped();
+    }
+
+    /** Return the number of moves shown without animation by
+     *  fast-forwarding. */
+    long coalescedKeys() {
+        return _coalesced;
+    }
+
+    /** Return the total of the numbers of keys waiting (including the
+     *  one read) when each key was read. */
+    long keyQueueDepth() {
+        return _keys.totalDepth();
+    }
+
+    /** Return the largest number of keys waiting when a key was read. */
+    long maxKeyQueueDepth() {
+        return _keys.maxDepth();
+    }
+
+    /** Return the total of the times (nanoseconds) from key presses to the
+     *  start of the display of the moves they caused. */
+    long keyLatency() {
+        return _board.latencyTotal();
+    }
+
+    /** Return the largest time (nanoseconds) from a key press to the start
+     *  of the display of the move it caused. */
+    long maxKeyLatency() {
+        return _board.latencyMax();
     }
 
     /** Set the current score being displayed to SCORE and the current
@@ -84,7 +179,13 @@ class GameDisplay extends TopLevel {
     /** The board widget. */
     private BoardDisplay _board;
     /** Queue of pending key presses. */
-    private ArrayBlockingQueue<String> _pendingKeys =
-        new ArrayBlockingQueue<>(5);
+    private final KeyQueue _keys = new KeyQueue(KEY_QUEUE_SIZE);
+    /** Time (as for System.nanoTime) at which the key last read was
+     *  pressed, until its move is displayed, and otherwise 0. */
+    private long _keyTime;
+    /** True iff fast-forwarding (see setFastForward). */
+    private boolean _fastForward;
+    /** Number of moves shown without animation by fast-forwarding. */
+    private long _coalesced;
 
 }
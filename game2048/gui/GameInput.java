@@ -0,0 +1,27 @@
+package game2048.gui;
+
+/** A source of the random tiles and keys that a Game takes in place of
+ *  the PRNG and the user when testing: the "T V R C" and "K<key>" lines
+ *  of a log as written by --log.  Comment lines (starting with "#") are
+ *  skipped.
+ *  @author Rafayel Mkrtchyan
+ */
+public interface GameInput {
+
+    /** Read the next random tile into TILE, a triple { V, R, C } as
+     *  returned by Game.getRandomTile.  Throws an exception (as for
+     *  Scanner.nextInt) if the next input is not a tile. */
+    void readTile(int[] tile);
+
+    /** Return the next key, or null at the end of the input.  Throws an
+     *  exception (as for Scanner.next) if the next input is not a key. */
+    String readKey();
+
+    /** Return true iff the next input is already available, so that
+     *  reading it will not wait for more to arrive (as it may from a
+     *  pipe).  By default, true. */
+    default boolean ready() {
+        return true;
+    }
+
+}
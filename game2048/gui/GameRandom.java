@@ -0,0 +1,96 @@
+package game2048.gui;
+
+import java.util.Random;
+
+/** A PRNG for the random tiles and keys of a Game, as chosen by the --rng
+ *  option of Main.  Its whole state fits in a long (see state), so that a
+ *  game can be rewound or saved together with its future tiles, and it
+ *  can be split into an independent generator, so that parallel
+ *  simulations can give each game its own reproducible stream.  It is a
+ *  Random, so that it can be passed wherever one is expected (for example,
+ *  to a Policy), but its subclasses take no locks and perform no atomic
+ *  updates.  JAVA (the default) produces exactly the values of a
+ *  java.util.Random with the same seed, and SPLITMIX is SplitMix64, which
+ *  is faster and draws each tile with a single 64-bit step.
+ *  @author Rafayel Mkrtchyan
+ */
+public abstract class GameRandom extends Random {
+
+    /** Names of the generators. */
+    public static final String JAVA = "java", SPLITMIX = "splitmix";
+
+    /** A generator with a seed that is very likely to differ from that of
+     *  any other. */
+    GameRandom() {
+        super();
+    }
+
+    /** A generator initialized with SEED. */
+    GameRandom(long seed) {
+        super(seed);
+    }
+
+    /** Return a new generator named NAME (JAVA or SPLITMIX) initialized
+     *  with SEED, or with a seed very likely to differ from that of any
+     *  other if SEED is 0.  Throws IllegalArgumentException if NAME is not
+     *  the name of a generator. */
+    public static GameRandom create(String name, long seed) {
+        switch (name) {
+        case JAVA:
+            return seed == 0 ? new RestorableRandom()
+                : new RestorableRandom(seed);
+        case SPLITMIX:
+            return new SplitMixRandom(seed != 0 ? seed
+                                      : new Random().nextLong());
+        default:
+            throw new IllegalArgumentException("unknown generator: "
+                                               + name);
+        }
+    }
+
+    /** Return the current state, suitable for setState. */
+    public abstract long state();
+
+    /** Restore a state STATE previously returned by state(). */
+    public abstract void setState(long state);
+
+    /** Return a new generator whose values are, for practical purposes,
+     *  independent of those of this one, and advance this one.  The new
+     *  generator depends only on the state of this one, so that a fixed
+     *  pattern of splits from a seeded generator always gives the same
+     *  streams. */
+    public abstract GameRandom split();
+
+    /** Return a random tile for a board with ROWS rows, encoded as for
+     *  tileValue, tileRow, and tileColumn: a 2 with probability
+     *  Game.LOW_TILE_PROBABILITY and otherwise a 4, on a uniformly chosen
+     *  row and column.  Draws nextDouble() for the value and then
+     *  nextInt(ROWS) for the row and column, as games have always done
+     *  with java.util.Random; a subclass may draw less. */
+    public int nextTile(int rows) {
+        int value = 2 * (1 + (int) (nextDouble()
+                                    / Game.LOW_TILE_PROBABILITY));
+        int row = nextInt(rows);
+        return tile(value, row, nextInt(rows));
+    }
+
+    /** Return the encoding of a tile of VALUE at ROW and COL. */
+    static int tile(int value, int row, int col) {
+        return (value << 16) | (row << 8) | col;
+    }
+
+    /** Return the value of TILE, as returned by nextTile. */
+    public static int tileValue(int tile) {
+        return tile >>> 16;
+    }
+
+    /** Return the row of TILE, as returned by nextTile. */
+    public static int tileRow(int tile) {
+        return (tile >>> 8) & 0xFF;
+    }
+
+    /** Return the column of TILE, as returned by nextTile. */
+    public static int tileColumn(int tile) {
+        return tile & 0xFF;
+    }
+}
@@ -0,0 +1,129 @@
+package game2048.gui;
+
+import java.util.concurrent.locks.LockSupport;
+
+/** A bounded queue of key codes (indices into BinaryLog.KEYS) passed from
+ *  one producer thread (the event-dispatch thread) to one consumer thread
+ *  (the game thread).  The codes and the times at which they were offered
+ *  are kept in a ring of primitive arrays, indexed by two counters that
+ *  each thread alone advances, so that neither thread ever takes a lock
+ *  and no objects are created per key.  The consumer parks while the
+ *  queue is empty, and the producer unparks it.  Keys offered while the
+ *  queue is full are dropped and counted.
+ *  @author Rafayel Mkrtchyan
+ */
+final class KeyQueue {
+
+    /** An empty queue holding at most CAPACITY keys, which must be a power
+     *  of 2. */
+    KeyQueue(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power "
+                                               + "of 2");
+        }
+        _mask = capacity - 1;
+        _codes = new int[capacity];
+        _times = new long[capacity];
+    }
+
+    /** Add key code CODE, pressed now, returning true, unless the queue is
+     *  full, in which case drop it and return false.  Called only by the
+     *  producer. */
+    boolean offer(int code) {
+        long tail = _tail;
+        if (tail - _head > _mask) {
+            _dropped += 1;
+            return false;
+        }
+        int k = (int) tail & _mask;
+        _codes[k] = code;
+        _times[k] = System.nanoTime();
+        _tail = tail + 1;
+        Thread waiter = _waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    /** Remove and return the first key code, waiting for one as necessary.
+     *  Its time is then available from time.  Called only by the
+     *  consumer. */
+    int take() {
+        long head = _head;
+        if (_tail == head) {
+            _waiter = Thread.currentThread();
+            while (_tail == head) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    _waiter = null;
+                    throw new Error("unexpected interrupt");
+                }
+            }
+            _waiter = null;
+        }
+        int depth = (int) (_tail - head);
+        _depthTotal += depth;
+        _maxDepth = Math.max(_maxDepth, depth);
+        int k = (int) head & _mask;
+        int code = _codes[k];
+        _time = _times[k];
+        _head = head + 1;
+        return code;
+    }
+
+    /** Return the number of keys waiting. */
+    int size() {
+        return (int) (_tail - _head);
+    }
+
+    /** Return the time (as for System.nanoTime) at which the key last
+     *  returned by take was offered. */
+    long time() {
+        return _time;
+    }
+
+    /** Return the number of keys taken. */
+    long taken() {
+        return _head;
+    }
+
+    /** Return the number of keys dropped because the queue was full. */
+    long dropped() {
+        return _dropped;
+    }
+
+    /** Return the total of the numbers of keys waiting, including the one
+     *  taken, when each key is taken. */
+    long totalDepth() {
+        return _depthTotal;
+    }
+
+    /** Return the largest number of keys waiting when a key is taken. */
+    int maxDepth() {
+        return _maxDepth;
+    }
+
+    /** Capacity - 1. */
+    private final int _mask;
+    /** Key k (counting from 0 since the queue was created) is in
+     *  _codes[k & _mask], and was offered at time _times[k & _mask]. */
+    private final int[] _codes;
+    /** Times at which the keys were offered. */
+    private final long[] _times;
+    /** Number of keys offered and kept (written only by the producer). */
+    private volatile long _tail;
+    /** Number of keys taken (written only by the consumer). */
+    private volatile long _head;
+    /** The consumer, while it is waiting for a key, or null. */
+    private volatile Thread _waiter;
+    /** Number of keys dropped (written only by the producer). */
+    private volatile long _dropped;
+    /** Total of the queue depths seen by take (written only by the
+     *  consumer). */
+    private long _depthTotal;
+    /** Largest depth seen by take. */
+    private int _maxDepth;
+    /** Time at which the key last taken was offered. */
+    private long _time;
+}
@@ -0,0 +1,146 @@
+package game2048.gui;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/** A GameInput that parses the ASCII text of a log directly from a
+ *  buffer (typically a MappedByteBuffer holding a whole file), without a
+ *  Scanner or a copy of the text.  Accepts the same input as
+ *  ScannerInput, and returns the standard keys without creating new
+ *  strings for them.
+ *  @author Rafayel Mkrtchyan
+ */
+public class MappedInput implements GameInput {
+
+    /** Keys returned without creating a new string. */
+    private static final String[] KEYS = {
+        "Up", "Down", "Left", "Right", "New Game", "Quit", "Undo", "Redo"
+    };
+
+    /** An input reading TEXT from its position to its limit. */
+    public MappedInput(ByteBuffer text) {
+        _text = text;
+        _pos = text.position();
+        _limit = text.limit();
+    }
+
+    @Override
+    public void readTile(int[] tile) {
+        if (!skipComments()) {
+            throw new NoSuchElementException();
+        } else if (_text.get(_pos) != 'T' || _pos + 1 < _limit
+                   && !isSpace(_text.get(_pos + 1))) {
+            throw new InputMismatchException("next input is not tile");
+        }
+        _pos += 1;
+        tile[0] = nextInt();
+        tile[1] = nextInt();
+        tile[2] = nextInt();
+    }
+
+    @Override
+    public String readKey() {
+        if (!skipComments()) {
+            return null;
+        } else if (_text.get(_pos) != 'K') {
+            throw new InputMismatchException("next input is not key");
+        }
+        int start, end;
+        start = end = _pos + 1;
+        while (end < _limit && _text.get(end) != '\n'
+               && _text.get(end) != '\r') {
+            end += 1;
+        }
+        _pos = end;
+        for (String key : KEYS) {
+            if (matches(key, start, end)) {
+                return key;
+            }
+        }
+        byte[] key = new byte[end - start];
+        for (int k = 0; k < key.length; k += 1) {
+            key[k] = _text.get(start + k);
+        }
+        return new String(key, StandardCharsets.US_ASCII);
+    }
+
+    /** Return the next integer, which may follow any amount of
+     *  whitespace. */
+    private int nextInt() {
+        skipSpace();
+        if (_pos == _limit) {
+            throw new NoSuchElementException();
+        }
+        boolean negative = _text.get(_pos) == '-';
+        int p = negative ? _pos + 1 : _pos;
+        int start = p;
+        long n = 0;
+        while (p < _limit && isDigit(_text.get(p))) {
+            n = 10 * n + _text.get(p) - '0';
+            if (n > Integer.MAX_VALUE + 1L) {
+                throw new InputMismatchException("integer out of range");
+            }
+            p += 1;
+        }
+        if (p == start || p < _limit && !isSpace(_text.get(p))
+            || !negative && n > Integer.MAX_VALUE) {
+            throw new InputMismatchException("next input is not integer");
+        }
+        _pos = p;
+        return (int) (negative ? -n : n);
+    }
+
+    /** Return true iff the characters START .. END-1 of the text are
+     *  KEY. */
+    private boolean matches(String key, int start, int end) {
+        if (key.length() != end - start) {
+            return false;
+        }
+        for (int k = 0; k < key.length(); k += 1) {
+            if (_text.get(start + k) != key.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Skip over whitespace and comment lines.  Return false if that
+     *  reaches the end of the input. */
+    private boolean skipComments() {
+        while (true) {
+            skipSpace();
+            if (_pos == _limit || _text.get(_pos) != '#') {
+                return _pos < _limit;
+            }
+            while (_pos < _limit && _text.get(_pos) != '\n') {
+                _pos += 1;
+            }
+        }
+    }
+
+    /** Skip over whitespace. */
+    private void skipSpace() {
+        while (_pos < _limit && isSpace(_text.get(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** Return true iff B is whitespace. */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /** Return true iff B is a decimal digit. */
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /** The input text. */
+    private final ByteBuffer _text;
+    /** Position of the next unread character of _text. */
+    private int _pos;
+    /** Position of the end of _text. */
+    private final int _limit;
+}
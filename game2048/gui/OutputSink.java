@@ -0,0 +1,25 @@
+package game2048.gui;
+
+/** A destination for the lines of text that a Game writes to report its
+ *  input (--log) and its significant calls (--testing).  Output may be
+ *  held until the next flush.
+ *  @author Rafayel Mkrtchyan
+ */
+interface OutputSink {
+
+    /** Append character C, which must be ASCII.  Returns this sink. */
+    OutputSink print(char c);
+
+    /** Append the decimal form of N.  Returns this sink. */
+    OutputSink print(int n);
+
+    /** Append TEXT.  Returns this sink. */
+    OutputSink print(String text);
+
+    /** End the current line, as for the %n format.  Returns this sink. */
+    OutputSink println();
+
+    /** Deliver all output appended so far. */
+    void flush();
+
+}
@@ -0,0 +1,59 @@
+package game2048.gui;
+
+/** A GameRandom whose state can be read and later restored, so that a game
+ *  can be rewound to a position and continue with the same random tiles.
+ *  Produces exactly the same values as a java.util.Random with the same
+ *  seed: it performs the same linear congruential steps, but keeps the
+ *  48-bit state in a field of its own.
+ *  @author Rafayel Mkrtchyan
+ */
+class RestorableRandom extends GameRandom {
+
+    /** Parameters of the generator, as for java.util.Random. */
+    private static final long MULTIPLIER = 0x5DEECE66DL, ADDEND = 0xBL,
+        MASK = (1L << 48) - 1;
+
+    /** A generator with a seed that is very likely to differ from that of
+     *  any other. */
+    RestorableRandom() {
+        super();
+    }
+
+    /** A generator initialized with SEED. */
+    RestorableRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        /* Called by the superclass constructor, before the fields of this
+         * class are initialized, so _state has no initializer. */
+        super.setSeed(seed);
+        _state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        _state = (_state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (_state >>> (48 - bits));
+    }
+
+    @Override
+    public long state() {
+        return _state;
+    }
+
+    @Override
+    public void setState(long state) {
+        _state = state & MASK;
+    }
+
+    /** Return a generator seeded with the next long of this one. */
+    @Override
+    public GameRandom split() {
+        return new RestorableRandom(nextLong());
+    }
+
+    /** The 48-bit generator state. */
+    private long _state;
+}
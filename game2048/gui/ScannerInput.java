@@ -0,0 +1,62 @@
+package game2048.gui;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.InputMismatchException;
+import java.util.Scanner;
+
+/** A GameInput that reads the text of a log with a Scanner.
+ *  @author Rafayel Mkrtchyan
+ */
+public class ScannerInput implements GameInput {
+
+    /** An input reading the text of IN. */
+    public ScannerInput(InputStream in) {
+        _stream = in;
+        _in = new Scanner(in);
+    }
+
+    /** Return true iff the underlying stream has input available.  May
+     *  be false when the Scanner has already buffered the next input. */
+    @Override
+    public boolean ready() {
+        try {
+            return _stream.available() > 0;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    @Override
+    public void readTile(int[] tile) {
+        skipComments();
+        _in.next("T");
+        tile[0] = _in.nextInt();
+        tile[1] = _in.nextInt();
+        tile[2] = _in.nextInt();
+    }
+
+    @Override
+    public String readKey() {
+        skipComments();
+        if (!_in.hasNext()) {
+            return null;
+        } else if (!_in.hasNext("K.*")) {
+            throw new InputMismatchException("next input is not key");
+        }
+        _in.findWithinHorizon("\\s*K(.*)", 0);
+        return _in.match().group(1);
+    }
+
+    /** Skip over any comment lines in the input. */
+    private void skipComments() {
+        while (_in.hasNext("#.*")) {
+            _in.skip("\\s*#.*");
+        }
+    }
+
+    /** The stream read by _in. */
+    private final InputStream _stream;
+    /** The input text. */
+    private final Scanner _in;
+}
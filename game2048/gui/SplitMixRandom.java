@@ -0,0 +1,134 @@
+package game2048.gui;
+
+/** The SplitMix64 generator, as in java.util.SplittableRandom: each step
+ *  adds an odd increment (its gamma) to a 64-bit state and returns a mix
+ *  of the bits of the result.  Its state is a plain field,
+ *  so a step is a few arithmetic operations, with no lock or atomic
+ *  update.  Unlike java.util.Random, it draws a double and a bounded int
+ *  with one step each, and a whole tile with one step.
+ *  @author Rafayel Mkrtchyan
+ */
+final class SplitMixRandom extends GameRandom {
+
+    /** Increment of the state per step of a generator that was not
+     *  split from another. */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** Number of bits of a step that choose the value of a tile in
+     *  nextTile, and number that choose each of its row and column. */
+    private static final int VALUE_BITS = 24, SQUARE_BITS = 20;
+
+    /** A tile is a 2 iff its value bits are less than this. */
+    private static final long LOW_TILE_LIMIT =
+        (long) (Game.LOW_TILE_PROBABILITY * (1 << VALUE_BITS));
+
+    /** Mask for the bits choosing a row or column. */
+    private static final long SQUARE_MASK = (1L << SQUARE_BITS) - 1;
+
+    /** A generator initialized with SEED. */
+    SplitMixRandom(long seed) {
+        this(seed, GAMMA);
+    }
+
+    /** A generator initialized with SEED whose state advances by GAMMA,
+     *  which must be odd, per step. */
+    private SplitMixRandom(long seed, long gamma) {
+        super(seed);
+        _gamma = gamma;
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        /* Called by the superclass constructor, before the fields of this
+         * class are initialized, so _state has no initializer. */
+        super.setSeed(seed);
+        _state = seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (Long.SIZE - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        _state += _gamma;
+        return mix(_state);
+    }
+
+    /** Return a random int in [0 .. BOUND), which must be positive, from
+     *  the upper 32 bits of one step, scaled to the range (which is biased
+     *  by at most BOUND / 2**32). */
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        return (int) (((nextLong() >>> Integer.SIZE) * bound)
+                      >>> Integer.SIZE);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /** Return a random tile, as for GameRandom.nextTile, from a single
+     *  step: its top VALUE_BITS bits choose the value, and two fields of
+     *  SQUARE_BITS bits below them, scaled to ROWS, choose the row and
+     *  column. */
+    @Override
+    public int nextTile(int rows) {
+        long r = nextLong();
+        int value = (r >>> (Long.SIZE - VALUE_BITS)) < LOW_TILE_LIMIT ? 2 : 4;
+        int row = (int) ((((r >>> SQUARE_BITS) & SQUARE_MASK) * rows)
+                         >>> SQUARE_BITS);
+        int col = (int) (((r & SQUARE_MASK) * rows) >>> SQUARE_BITS);
+        return tile(value, row, col);
+    }
+
+    @Override
+    public long state() {
+        return _state;
+    }
+
+    @Override
+    public void setState(long state) {
+        _state = state;
+    }
+
+    /** Return a generator whose state is the next value of this one, and
+     *  whose gamma is derived from the step after that, as by
+     *  SplittableRandom.split.  Since each generator of a tree of splits
+     *  has its own gamma, their streams are not the same sequence at
+     *  different offsets. */
+    @Override
+    public GameRandom split() {
+        long seed = nextLong();
+        _state += _gamma;
+        return new SplitMixRandom(seed, mixGamma(_state));
+    }
+
+    /** Return the SplitMix64 output for state Z. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Return an odd gamma derived from Z, as by SplittableRandom: a mix
+     *  of Z with its lowest bit set, with alternate bits flipped if too
+     *  few adjacent bits of it differ (which makes a poor increment). */
+    static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return n < 24 ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+
+    /** Increment of _state per step (odd). */
+    private final long _gamma;
+    /** The 64-bit generator state. */
+    private long _state;
+}
@@ -2,17 +2,22 @@ package game2048.gui;
 
 import java.util.HashMap;
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.FontMetrics;
+import java.awt.Image;
 
 import static game2048.gui.BoardDisplay.*;
 
-/** Represents the image of a numbered tile on a 2048 board.
+/** Represents the image of a numbered tile on a 2048 board.  A Tile
+ *  records the position to which the game has most recently moved it;
+ *  where it is drawn at any moment is up to the BoardDisplay animating
+ *  it.
  *  @author P. N. Hilfinger.
  */
 class Tile {
-    /** Amount to move in TICK milliseconds (in pixels). */
-    static final double MOVE_DELTA = 0.016 * ROW_SIZE * TICK;
+    /** Speed of moving tiles (in pixels per nanosecond). */
+    static final double MOVE_SPEED = 0.016 * ROW_SIZE / 1e6;
 
     /** Fractional increase in size for "bloom effect". */
     static final double BLOOM_FACTOR = 0.1;
@@ -20,8 +25,15 @@ class Tile {
     /** Number of ticks over which bloom occurs. */
     static final int BLOOM_STEPS = 15;
 
+    /** Time over which bloom occurs (nanoseconds). */
+    static final long BLOOM_TIME = BLOOM_STEPS * TICK * 1000000L;
+
+    /** Largest growth on each side (in pixels) caused by bloom. */
+    static final int MAX_BLOOM = (int) Math.rint(TILE_SIDE * BLOOM_FACTOR);
+
     /** Mapping from numbers on tiles to their text and background
-     *  colors. */
+     *  colors.  Colors for values beyond TILE_COLOR_MAP are added by
+     *  colors as needed. */
     static final HashMap<Integer, Color[]> TILE_COLORS = new HashMap<>();
 
     /** List of tile values and corresponding background and foreground
@@ -49,10 +61,115 @@ class Tile {
         }
     };
 
+    /** Text color of tiles beyond TILE_COLOR_MAP. */
+    private static final int HIGH_TILE_TEXT = 0xf9f6f2;
+
+    /** Hue, saturation, and brightness of the first tile beyond
+     *  TILE_COLOR_MAP, the change in hue for each doubling of value, and
+     *  the number of doublings over which brightness alternates. */
+    private static final float
+        HIGH_TILE_HUE = 0.95f, HIGH_TILE_HUE_STEP = 0.13f,
+        HIGH_TILE_SATURATION = 0.55f, HIGH_TILE_BRIGHTNESS = 0.30f,
+        HIGH_TILE_BRIGHTNESS_STEP = 0.08f;
+
+    /** Return the text and background colors for a tile showing VALUE.
+     *  Values beyond TILE_COLOR_MAP get dark backgrounds whose hue
+     *  rotates with each doubling. */
+    static Color[] colors(int value) {
+        Color[] result = TILE_COLORS.get(value);
+        if (result == null) {
+            int k = Integer.numberOfTrailingZeros(value)
+                - TILE_COLOR_MAP.length - 1;
+            float hue = HIGH_TILE_HUE + HIGH_TILE_HUE_STEP * k,
+                brightness =
+                HIGH_TILE_BRIGHTNESS + HIGH_TILE_BRIGHTNESS_STEP * (k % 3);
+            result = new Color[] {
+                new Color(HIGH_TILE_TEXT),
+                Color.getHSBColor(hue - (float) Math.floor(hue),
+                                  HIGH_TILE_SATURATION, brightness)
+            };
+            TILE_COLORS.put(value, result);
+        }
+        return result;
+    }
+
+    /** The text of a tile's label, its font, and its offset from the
+     *  tile's upper-left corner. */
+    private static class Label {
+        /** The label for VALUE as drawn with METRICS. */
+        Label(int value, FontMetrics metrics) {
+            text = Integer.toString(value);
+            font = metrics.getFont();
+            x = (TILE_SIDE - metrics.stringWidth(text)) / 2;
+            y = (2 * TILE_SIDE + metrics.getMaxAscent()) / 4;
+        }
+
+        /** The text. */
+        final String text;
+        /** The font. */
+        final Font font;
+        /** The offset. */
+        final int x, y;
+    }
+
+    /** Mapping from numbers on tiles to their labels, filled in by label
+     *  as needed. */
+    private static final HashMap<Integer, Label> LABELS = new HashMap<>();
+
+    /** Return the label for a tile showing VALUE, measured as drawn on
+     *  G. */
+    private static Label label(int value, Graphics2D g) {
+        Label result = LABELS.get(value);
+        if (result == null) {
+            int digits = Integer.toString(value).length();
+            result = new Label(value, g.getFontMetrics(TILE_FONTS[digits]));
+            LABELS.put(value, result);
+        }
+        return result;
+    }
+
+    /** Mapping from numbers on tiles to their images: the image of a tile
+     *  grown by b pixels on each side is element b.  Filled in by sprite
+     *  as needed. */
+    private static final HashMap<Integer, Image[]> SPRITES = new HashMap<>();
+
+    /** Return the image of a tile showing VALUE grown by BLOOM pixels on
+     *  each side, compatible with G and drawn with its rendering hints. */
+    private static Image sprite(int value, int bloom, Graphics2D g) {
+        Image[] sprites = SPRITES.get(value);
+        if (sprites == null) {
+            sprites = new Image[MAX_BLOOM + 1];
+            SPRITES.put(value, sprites);
+        }
+        if (sprites[bloom] == null) {
+            int side = TILE_SIDE + 2 * bloom;
+            Image image =
+                g.getDeviceConfiguration().createCompatibleImage(side, side);
+            Graphics2D ig = (Graphics2D) image.getGraphics();
+            ig.setRenderingHints(g.getRenderingHints());
+            Label label = label(value, ig);
+            Color[] colors = colors(value);
+            ig.setColor(colors[1]);
+            ig.fillRect(0, 0, side, side);
+            ig.setColor(colors[0]);
+            ig.setFont(label.font);
+            ig.drawString(label.text, bloom + label.x, bloom + label.y);
+            ig.dispose();
+            sprites[bloom] = image;
+        }
+        return sprites[bloom];
+    }
+
     /** A new tile at (0, 0) displaying VALUE. */
     Tile(int value) {
+        reset(value);
+    }
+
+    /** Reinitialize me as for a new tile displaying VALUE. */
+    void reset(int value) {
         _value = value;
-        bloom();
+        _x = _y = 0;
+        _appeared = 0;
     }
 
     /** Set my position to the square at (ROW, COL). */
@@ -66,67 +183,50 @@ class Tile {
         return _value;
     }
 
-    /** Return the value after one animation step for a coordinate
-     *  transitioning from X0 to X1. */
-    double step(double x0, double x1) {
-        if (x0 > x1) {
-            return Math.max(x1, x0 - MOVE_DELTA);
-        } else if (x0 < x1) {
-            return Math.min(x1, x0 + MOVE_DELTA);
-        } else {
-            return x0;
-        }
+    /** Return the x coordinate of my position. */
+    int getX() {
+        return _x;
     }
 
-    /** Update my position toward (XDEST, YDEST) and size for one animation
-     *  step.  Returns true iff there was a change. */
-    boolean tick(double xdest, double ydest) {
-        if (xdest != _x || ydest != _y) {
-            _x = step(_x, xdest);
-            _y = step(_y, ydest);
-            return true;
-        } else if (_bloom > -1) {
-            _bloom -= 1;
-            return true;
-        }
-        return false;
+    /** Return the y coordinate of my position. */
+    int getY() {
+        return _y;
     }
 
-    /** Set me to "bloom". */
-    void bloom() {
-        _bloom = BLOOM_STEPS;
+    /** Record that I came to rest on the display at time NOW (as for
+     *  System.nanoTime), unless I already have.  Returns true iff I had
+     *  not, so that I now start to bloom. */
+    boolean appear(long now) {
+        if (_appeared != 0) {
+            return false;
+        }
+        _appeared = now;
+        return true;
     }
 
-    /** Render this tile on G. */
-    void render(Graphics2D g) {
-        int x = (int) Math.rint(_x), y = (int) Math.rint(_y);
-        if (_value < 100) {
-            g.setFont(TILE_FONT2);
-        } else if (_value < 1000) {
-            g.setFont(TILE_FONT3);
-        } else {
-            g.setFont(TILE_FONT4);
+    /** Return the size (in pixels) by which I grow on each side at time
+     *  NOW because of blooming, which starts when I appear. */
+    int bloomSize(long now) {
+        long age = now - _appeared;
+        if (_appeared == 0 || age >= BLOOM_TIME) {
+            return 0;
         }
-        FontMetrics metrics = g.getFontMetrics();
-        int bloom =
-            (int) Math.rint(TILE_SIDE * BLOOM_FACTOR * (1 + _bloom)
-                            / (BLOOM_STEPS + 1));
-        g.setColor(TILE_COLORS.get(_value)[1]);
-        g.fillRect(x - bloom, y - bloom, 2 * bloom + TILE_SIDE,
-                   2 * bloom + TILE_SIDE);
-        g.setColor(TILE_COLORS.get(_value)[0]);
-
-        String label = Integer.toString(_value);
-        g.drawString(label,
-                     x + (TILE_SIDE - metrics.stringWidth(label)) / 2,
-                     y + (2 * TILE_SIDE + metrics.getMaxAscent()) / 4);
+        return (int) Math.rint(TILE_SIDE * BLOOM_FACTOR
+                               * (BLOOM_TIME - age) / BLOOM_TIME);
+    }
+
+    /** Render this tile on G with its upper-left corner at (X, Y), grown
+     *  by BLOOM (at most MAX_BLOOM) pixels on each side. */
+    void render(Graphics2D g, int x, int y, int bloom) {
+        g.drawImage(sprite(_value, bloom, g), x - bloom, y - bloom, null);
     }
 
     /** My tile value. */
-    private final int _value;
+    private int _value;
     /** My current position. */
-    private double _x, _y;
-    /** Number of animation steps left to bloom. */
-    private int _bloom;
+    private int _x, _y;
+    /** Time at which I came to rest on the display, or 0 if I have not
+     *  yet.  Used only by the display's thread. */
+    private long _appeared;
 
 }
@@ -0,0 +1,140 @@
+package game2048;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import game2048.Main.Side;
+
+/** A TiltKernel that applies the operations of SwarTilt to vectors of
+ *  packed boards, one board per 64-bit lane, using the incubating Vector
+ *  API: the compaction and merge masks of all the boards in a vector are
+ *  computed lane-wise at once.  Uses the preferred vector size of the
+ *  hardware (4 boards with AVX2, 8 with AVX-512), and SwarTilt for the
+ *  boards left over.  Needs the module jdk.incubator.vector both to
+ *  compile and to run; see vector/Makefile.
+ *  @author Rafayel Mkrtchyan
+ */
+class VectorTilt implements TiltKernel {
+
+    /** The vectors used. */
+    private static final VectorSpecies<Long> SPECIES =
+        LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public void tilt(long[] boards, long[] out, int n, Side side) {
+        int k;
+        int bound = SPECIES.loopBound(n);
+        for (k = 0; k < bound; k += SPECIES.length()) {
+            tilt(LongVector.fromArray(SPECIES, boards, k), side)
+                .intoArray(out, k);
+        }
+        for (; k < n; k += 1) {
+            out[k] = SwarTilt.tilt(boards[k], side);
+        }
+    }
+
+    /** Return the boards in BOARDS tilted toward SIDE. */
+    static LongVector tilt(LongVector boards, Side side) {
+        switch (side) {
+        case WEST:
+            return tiltWest(boards);
+        case EAST:
+            return flipColumns(tiltWest(flipColumns(boards)));
+        case NORTH:
+            return transpose(tiltWest(transpose(boards)));
+        case SOUTH:
+            return transpose(flipColumns(tiltWest(flipColumns(
+                transpose(boards)))));
+        default:
+            throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return BOARDS with every row tilted toward column 0, as for
+     *  SwarTilt.tiltWest. */
+    static LongVector tiltWest(LongVector boards) {
+        boards = close(boards, 0);
+        boards = close(boards, 0);
+        boards = close(boards, 0);
+        boards = close(boards, 1);
+        boards = close(boards, 1);
+        boards = close(boards, 2);
+        boards = merge(boards, 0);
+        boards = merge(boards, 1);
+        return merge(boards, 2);
+    }
+
+    /** As for SwarTilt.close, lane-wise on BOARDS and C. */
+    private static LongVector close(LongVector boards, int c) {
+        return shiftTail(boards, nonzero(boards).not()
+                         .and(SwarTilt.COLUMN_ONES[c]), c);
+    }
+
+    /** As for SwarTilt.merge, lane-wise on BOARDS and C. */
+    private static LongVector merge(LongVector boards, int c) {
+        LongVector rows =
+            nonzero(boards.lanewise(VectorOperators.XOR, shr(boards, 4)))
+            .not().and(nonzero(boards)).and(full(boards).not())
+            .and(SwarTilt.COLUMN_ONES[c]);
+        return shiftTail(boards.add(rows), shl(rows, 4), c + 1);
+    }
+
+    /** As for SwarTilt.shiftTail, lane-wise on BOARDS, ROWS, and C. */
+    private static LongVector shiftTail(LongVector boards, LongVector rows,
+                                        int c) {
+        LongVector tail = spread(rows).and(SwarTilt.TAIL[c]);
+        return boards.and(tail.not())
+            .or(shr(boards, 4).and(tail).and(~SwarTilt.TAIL[3]));
+    }
+
+    /** As for SwarTilt.spread, lane-wise on X. */
+    private static LongVector spread(LongVector x) {
+        x = x.or(shl(x, 1));
+        x = x.or(shl(x, 2));
+        x = x.or(shl(x, 4));
+        return x.or(shl(x, 8));
+    }
+
+    /** As for SwarTilt.nonzero, lane-wise on X. */
+    private static LongVector nonzero(LongVector x) {
+        x = x.or(shr(x, 1));
+        x = x.or(shr(x, 2));
+        return x.and(SwarTilt.NIBBLE_ONES);
+    }
+
+    /** As for SwarTilt.full, lane-wise on X. */
+    private static LongVector full(LongVector x) {
+        x = x.and(shr(x, 1));
+        x = x.and(shr(x, 2));
+        return x.and(SwarTilt.NIBBLE_ONES);
+    }
+
+    /** As for Bitboard.transpose, lane-wise on BOARDS. */
+    private static LongVector transpose(LongVector boards) {
+        LongVector a = boards.and(0xF0F00F0FF0F00F0FL)
+            .or(shl(boards.and(0x0000F0F00000F0F0L), 12))
+            .or(shr(boards.and(0x0F0F00000F0F0000L), 12));
+        return a.and(0xFF00FF0000FF00FFL)
+            .or(shr(a.and(0x00FF00FF00000000L), 24))
+            .or(shl(a.and(0x00000000FF00FF00L), 24));
+    }
+
+    /** As for Symmetry.flipColumns, lane-wise on BOARDS. */
+    private static LongVector flipColumns(LongVector boards) {
+        return shl(boards.and(0x000F000F000F000FL), 12)
+            .or(shl(boards.and(0x00F000F000F000F0L), 4))
+            .or(shr(boards, 4).and(0x00F000F000F000F0L))
+            .or(shr(boards, 12).and(0x000F000F000F000FL));
+    }
+
+    /** Return X shifted left by N bits in each lane. */
+    private static LongVector shl(LongVector x, int n) {
+        return x.lanewise(VectorOperators.LSHL, n);
+    }
+
+    /** Return X shifted right by N bits in each lane, filling with 0s. */
+    private static LongVector shr(LongVector x, int n) {
+        return x.lanewise(VectorOperators.LSHR, n);
+    }
+}